@@ -0,0 +1,95 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.benchmarks;
+
+import com.pvphall.inject.InjectType;
+import com.pvphall.inject.Injects;
+import com.pvphall.inject.transformers.InjectTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Cost of calling a woven method, with a {@link InjectType#CALLBACK} hook against an {@link InjectType#INSERT_START} one.
+ * Run with <code>-prof gc</code> to check that the callback does not allocate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CallbackBenchmark {
+
+    @Param({"INSERT_START", "CALLBACK"})
+    public InjectType type;
+
+    @Param({"false", "true"})
+    public boolean cancel;
+
+    private IntUnaryOperator target;
+    private int operand;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        String name = Fixtures.CALLBACK_TARGET.replace('/', '.');
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        classes.put(Fixtures.CALLBACK_TARGET, Fixtures.callbackTarget());
+        classes.put(Fixtures.CALLBACK_INJECTION, Fixtures.callbackInjection(this.type));
+
+        String config = "{\"injects\": [\"" + Fixtures.CALLBACK_INJECTION.replace('/', '.') + "\"]}";
+        Injects.getInstance().loadConfig(new ByteArrayInputStream(config.getBytes(StandardCharsets.UTF_8)));
+
+        FixtureClassLoader loader = new FixtureClassLoader(classes);
+        byte[] woven = new InjectTransformer(loader).transform(name, name, classes.get(Fixtures.CALLBACK_TARGET));
+
+        // A rejected hook leaves the target as is, which would only measure the plain method
+        if (woven == classes.get(Fixtures.CALLBACK_TARGET))
+            throw new IllegalStateException("The " + this.type + " hook was not woven");
+
+        this.target = (IntUnaryOperator) loader.define(name, woven).getConstructor().newInstance();
+        this.operand = this.cancel ? -1 : 1;
+    }
+
+    @Benchmark
+    public int call() {
+        return this.target.applyAsInt(this.operand);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.benchmarks;
+
+import com.pvphall.inject.ClassHierarchy;
+import com.pvphall.inject.SafeClassWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls per second of {@link SafeClassWriter#getCommonSuperClass(String, String)} over the Minecraft entity tree,
+ * and over two chains of classes deriving from a common root.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommonSuperClassBenchmark {
+
+    private ClassHierarchy hierarchy;
+    private BenchmarkClassWriter writer;
+    private String[][] pairs;
+    private int index;
+
+    @Setup
+    public void setup() {
+        Map<String, byte[]> classes = Fixtures.entityHierarchy();
+        ClassLoader loader = new FixtureClassLoader(classes);
+
+        this.hierarchy = ClassHierarchy.getInstance(loader);
+        this.writer = new BenchmarkClassWriter(loader);
+        this.pairs = Fixtures.entityPairs(classes);
+    }
+
+    @Benchmark
+    public String memoized() {
+        String[] pair = this.nextPair();
+
+        return this.writer.commonSuperClass(pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public String headersOnly() {
+        String[] pair = this.nextPair();
+
+        // Only the pair memo is dropped, class headers and ancestor chains stay cached
+        this.hierarchy.clearCommonSuperClasses();
+
+        return this.writer.commonSuperClass(pair[0], pair[1]);
+    }
+
+    @Benchmark
+    public String deepHeadersOnly(DeepHierarchy hierarchy) {
+        hierarchy.hierarchy.clearCommonSuperClasses();
+
+        return hierarchy.writer.commonSuperClass(hierarchy.left, hierarchy.right);
+    }
+
+    @Benchmark
+    public String deepCold(DeepHierarchy hierarchy) {
+        // Every header of both chains is read again, as for the first class loaded with such a hierarchy
+        hierarchy.hierarchy.clear();
+
+        return hierarchy.writer.commonSuperClass(hierarchy.left, hierarchy.right);
+    }
+
+    private String[] nextPair() {
+        String[] pair = this.pairs[this.index];
+        this.index = (this.index + 1) % this.pairs.length;
+
+        return pair;
+    }
+
+    @State(Scope.Thread)
+    public static class DeepHierarchy {
+
+        @Param({"4", "16", "64"})
+        public int depth;
+
+        private ClassHierarchy hierarchy;
+        private BenchmarkClassWriter writer;
+        private String left;
+        private String right;
+
+        @Setup
+        public void setup() {
+            ClassLoader loader = new FixtureClassLoader(Fixtures.deepHierarchy(this.depth));
+
+            this.hierarchy = ClassHierarchy.getInstance(loader);
+            this.writer = new BenchmarkClassWriter(loader);
+            this.left = "deep/Left" + this.depth;
+            this.right = "deep/Right" + this.depth;
+        }
+    }
+
+    public static class BenchmarkClassWriter extends SafeClassWriter {
+
+        public BenchmarkClassWriter(ClassLoader loader) {
+            super(null, loader, 0);
+        }
+
+        public String commonSuperClass(String type1, String type2) {
+            return this.getCommonSuperClass(type1, type2);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.benchmarks;
+
+import com.pvphall.inject.InjectPrecise;
+import com.pvphall.inject.InjectType;
+import com.pvphall.inject.Injects;
+import com.pvphall.inject.config.Config;
+import com.pvphall.inject.config.Manifest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken to load the list of injection classes, from injects.json and from the compile-time manifest.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigBenchmark {
+
+    @Param({"10", "1000"})
+    public int injects;
+
+    private byte[] json;
+    private byte[] manifest;
+
+    @Setup
+    public void setup() throws IOException {
+        this.json = Fixtures.config(this.injects).getBytes(StandardCharsets.UTF_8);
+
+        List<Manifest.Entry> entries = new ArrayList<Manifest.Entry>();
+
+        for (String name : this.configNames())
+            entries.add(new Manifest.Entry(name, name.replace("Inject", ""), Collections.singletonList(
+                    new Manifest.MethodEntry("onUpdate", "()V", InjectType.INSERT_START, Collections.<InjectPrecise>emptyList())
+            )));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new Manifest(entries).write(outputStream);
+        this.manifest = outputStream.toByteArray();
+    }
+
+    private List<String> configNames() {
+        Injects.getInstance().loadConfig(new ByteArrayInputStream(this.json));
+
+        return Injects.getInstance().getConfig().getInjects();
+    }
+
+    @Benchmark
+    public Config loadConfig() {
+        Injects.getInstance().loadConfig(new ByteArrayInputStream(this.json));
+
+        return Injects.getInstance().getConfig();
+    }
+
+    @Benchmark
+    public Config loadManifest() {
+        Injects.getInstance().loadManifest(new ByteArrayInputStream(this.manifest));
+
+        return Injects.getInstance().getConfig();
+    }
+}
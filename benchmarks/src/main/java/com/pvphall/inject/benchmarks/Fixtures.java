@@ -0,0 +1,460 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.benchmarks;
+
+import com.pvphall.inject.InjectType;
+import com.pvphall.inject.annotations.Inject;
+import com.pvphall.inject.annotations.Injectable;
+import com.pvphall.inject.annotations.Precise;
+import com.pvphall.inject.annotations.PreciseType;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generates the classes used by the benchmarks, so they run offline and without the game jar.
+ */
+public class Fixtures {
+
+    public static final String ENTITY = "net/minecraft/entity/";
+    public static final String TARGET = "bench/Target";
+    public static final String INJECTION = "bench/TargetInject";
+    public static final String CALLBACK_TARGET = "bench/CallbackTarget";
+    public static final String CALLBACK_INJECTION = "bench/CallbackTargetInject";
+
+    /**
+     * @return a copy of the Minecraft entity tree, internal name to class bytes
+     */
+    public static Map<String, byte[]> entityHierarchy() {
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+
+        addInterface(classes, "net/minecraft/command/ICommandSender");
+        addInterface(classes, ENTITY + "passive/IAnimals");
+        addInterface(classes, ENTITY + "monster/IMob", ENTITY + "passive/IAnimals");
+        addInterface(classes, ENTITY + "IEntityOwnable");
+        addInterface(classes, ENTITY + "IProjectile");
+
+        addClass(classes, ENTITY + "Entity", "java/lang/Object", "net/minecraft/command/ICommandSender");
+        addClass(classes, ENTITY + "EntityLivingBase", ENTITY + "Entity");
+        addClass(classes, ENTITY + "EntityLiving", ENTITY + "EntityLivingBase");
+        addClass(classes, ENTITY + "EntityCreature", ENTITY + "EntityLiving");
+        addClass(classes, ENTITY + "EntityAgeable", ENTITY + "EntityCreature");
+        addClass(classes, ENTITY + "EntityFlying", ENTITY + "EntityLiving");
+        addClass(classes, ENTITY + "monster/EntityMob", ENTITY + "EntityCreature", ENTITY + "monster/IMob");
+        addClass(classes, ENTITY + "monster/EntityZombie", ENTITY + "monster/EntityMob");
+        addClass(classes, ENTITY + "monster/EntityPigZombie", ENTITY + "monster/EntityZombie");
+        addClass(classes, ENTITY + "monster/EntitySkeleton", ENTITY + "monster/EntityMob");
+        addClass(classes, ENTITY + "monster/EntityCreeper", ENTITY + "monster/EntityMob");
+        addClass(classes, ENTITY + "monster/EntityGhast", ENTITY + "EntityFlying", ENTITY + "monster/IMob");
+        addClass(classes, ENTITY + "passive/EntityAnimal", ENTITY + "EntityAgeable", ENTITY + "passive/IAnimals");
+        addClass(classes, ENTITY + "passive/EntityCow", ENTITY + "passive/EntityAnimal");
+        addClass(classes, ENTITY + "passive/EntityMooshroom", ENTITY + "passive/EntityCow");
+        addClass(classes, ENTITY + "passive/EntityPig", ENTITY + "passive/EntityAnimal");
+        addClass(classes, ENTITY + "passive/EntityTameable", ENTITY + "passive/EntityAnimal", ENTITY + "IEntityOwnable");
+        addClass(classes, ENTITY + "passive/EntityWolf", ENTITY + "passive/EntityTameable");
+        addClass(classes, ENTITY + "passive/EntityOcelot", ENTITY + "passive/EntityTameable");
+        addClass(classes, ENTITY + "player/EntityPlayer", ENTITY + "EntityLivingBase");
+        addClass(classes, "net/minecraft/client/entity/AbstractClientPlayer", ENTITY + "player/EntityPlayer");
+        addClass(classes, "net/minecraft/client/entity/EntityPlayerSP", "net/minecraft/client/entity/AbstractClientPlayer");
+        addClass(classes, "net/minecraft/client/entity/EntityOtherPlayerMP", "net/minecraft/client/entity/AbstractClientPlayer");
+        addClass(classes, ENTITY + "player/EntityPlayerMP", ENTITY + "player/EntityPlayer");
+        addClass(classes, ENTITY + "item/EntityItem", ENTITY + "Entity");
+        addClass(classes, ENTITY + "projectile/EntityArrow", ENTITY + "Entity", ENTITY + "IProjectile");
+        addClass(classes, ENTITY + "projectile/EntityFireball", ENTITY + "Entity");
+        addClass(classes, ENTITY + "projectile/EntityLargeFireball", ENTITY + "projectile/EntityFireball");
+
+        return classes;
+    }
+
+    /**
+     * @return every pair of concrete leaf types of {@link #entityHierarchy()}, as frame merges would query them
+     */
+    public static String[][] entityPairs(Map<String, byte[]> classes) {
+        String[] leaves = {
+                ENTITY + "monster/EntityPigZombie",
+                ENTITY + "monster/EntitySkeleton",
+                ENTITY + "monster/EntityCreeper",
+                ENTITY + "monster/EntityGhast",
+                ENTITY + "passive/EntityMooshroom",
+                ENTITY + "passive/EntityPig",
+                ENTITY + "passive/EntityWolf",
+                ENTITY + "passive/EntityOcelot",
+                "net/minecraft/client/entity/EntityPlayerSP",
+                "net/minecraft/client/entity/EntityOtherPlayerMP",
+                ENTITY + "player/EntityPlayerMP",
+                ENTITY + "item/EntityItem",
+                ENTITY + "projectile/EntityArrow",
+                ENTITY + "projectile/EntityLargeFireball",
+                ENTITY + "monster/IMob",
+        };
+        String[][] pairs = new String[leaves.length * leaves.length][];
+
+        for (int i = 0; i < leaves.length; i++)
+            for (int j = 0; j < leaves.length; j++)
+                pairs[i * leaves.length + j] = new String[] { leaves[i], leaves[j] };
+
+        return pairs;
+    }
+
+    /**
+     * @return a chain of <code>depth</code> classes on each side of a common root, and the two leaves to merge
+     */
+    public static Map<String, byte[]> deepHierarchy(int depth) {
+        Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+
+        addClass(classes, "deep/Root", "java/lang/Object");
+
+        for (int i = 1; i <= depth; i++) {
+            addClass(classes, "deep/Left" + i, i == 1 ? "deep/Root" : "deep/Left" + (i - 1));
+            addClass(classes, "deep/Right" + i, i == 1 ? "deep/Root" : "deep/Right" + (i - 1));
+        }
+
+        return classes;
+    }
+
+    /**
+     * @return the name of the method of {@link #TARGET} targeted by the given inject type
+     */
+    public static String targetMethod(InjectType type) {
+        return type.name().toLowerCase();
+    }
+
+    /**
+     * Creates {@link #TARGET}, with one method per inject type that can be applied to it and
+     * <code>fillerMethods</code> methods left untouched by the injections, to make it larger.
+     */
+    public static byte[] target(int fillerMethods) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, TARGET, null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PUBLIC, "counter", "I", null, null).visitEnd();
+
+        addConstructor(writer);
+        addMethod(writer, TARGET, "helper", false);
+
+        for (InjectType type : InjectType.values())
+            if (type != InjectType.CREATE)
+                addMethod(writer, TARGET, targetMethod(type), true);
+
+        for (int i = 0; i < fillerMethods; i++)
+            addFillerMethod(writer, "filler" + i);
+
+        writer.visitEnd();
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates {@link #INJECTION}, annotated like a compiled injection class, with one method per given type.
+     */
+    public static byte[] injection(InjectType... types) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER | Opcodes.ACC_ABSTRACT, INJECTION, null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PUBLIC, "counter", "I", null, null).visitEnd();
+
+        AnnotationVisitor injectable = writer.visitAnnotation(Type.getDescriptor(Injectable.class), true);
+        injectable.visit("target", TARGET.replace('/', '.'));
+        injectable.visitEnd();
+
+        addConstructor(writer);
+
+        for (InjectType type : types) {
+            // A callback takes an extra CallbackInfo, a redirect of the call to helper() takes its receiver
+            String desc = type == InjectType.CALLBACK ? "(" + InjectType.CALLBACK_INFO + ")V" : type == InjectType.REDIRECT ? "(L" + TARGET + ";)V" : "()V";
+            MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, targetMethod(type), desc, null, null);
+
+            AnnotationVisitor inject = method.visitAnnotation(Type.getDescriptor(Inject.class), true);
+            inject.visitEnum("type", Type.getDescriptor(InjectType.class), type.name());
+
+            if (type == InjectType.PRECISE || type == InjectType.REDIRECT) {
+                AnnotationVisitor array = inject.visitArray("precise");
+                AnnotationVisitor precise = array.visitAnnotation(null, Type.getDescriptor(Precise.class));
+                precise.visitEnum("type", Type.getDescriptor(PreciseType.class), PreciseType.METHOD.name());
+                precise.visit("name", "helper");
+                precise.visitEnd();
+                array.visitEnd();
+            }
+
+            inject.visitEnd();
+            addBody(method, INJECTION, 2, false);
+        }
+
+        writer.visitEnd();
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates {@link #TARGET} with only a large PRECISE target method, which increments the counter
+     * then calls <code>helper()</code> <code>statements</code> times.
+     */
+    public static byte[] preciseTarget(int statements) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, TARGET, null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PUBLIC, "counter", "I", null, null).visitEnd();
+
+        addConstructor(writer);
+        addMethod(writer, TARGET, "helper", false);
+
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, targetMethod(InjectType.PRECISE), "()V", null, null);
+        method.visitCode();
+
+        for (int i = 0; i < statements; i++) {
+            method.visitVarInsn(Opcodes.ALOAD, 0);
+            method.visitInsn(Opcodes.DUP);
+            method.visitFieldInsn(Opcodes.GETFIELD, TARGET, "counter", "I");
+            method.visitInsn(Opcodes.ICONST_1);
+            method.visitInsn(Opcodes.IADD);
+            method.visitFieldInsn(Opcodes.PUTFIELD, TARGET, "counter", "I");
+            method.visitVarInsn(Opcodes.ALOAD, 0);
+            method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, TARGET, "helper", "()V", false);
+        }
+
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        writer.visitEnd();
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates {@link #INJECTION} with a single PRECISE injection into {@link #preciseTarget(int)} at <code>locations</code>
+     * locations, alternating between calls to <code>helper()</code> and writes of the counter.
+     */
+    public static byte[] preciseInjection(int locations) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER | Opcodes.ACC_ABSTRACT, INJECTION, null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PUBLIC, "counter", "I", null, null).visitEnd();
+
+        AnnotationVisitor injectable = writer.visitAnnotation(Type.getDescriptor(Injectable.class), true);
+        injectable.visit("target", TARGET.replace('/', '.'));
+        injectable.visitEnd();
+
+        addConstructor(writer);
+
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, targetMethod(InjectType.PRECISE), "()V", null, null);
+        AnnotationVisitor inject = method.visitAnnotation(Type.getDescriptor(Inject.class), true);
+        inject.visitEnum("type", Type.getDescriptor(InjectType.class), InjectType.PRECISE.name());
+        AnnotationVisitor array = inject.visitArray("precise");
+
+        for (int i = 0; i < locations; i++) {
+            boolean call = i % 2 == 0;
+            AnnotationVisitor precise = array.visitAnnotation(null, Type.getDescriptor(Precise.class));
+            precise.visitEnum("type", Type.getDescriptor(PreciseType.class), (call ? PreciseType.METHOD : PreciseType.FIELD_PUT).name());
+            precise.visit("name", call ? "helper" : "counter");
+            precise.visit("ordinal", i);
+            precise.visitEnd();
+        }
+
+        array.visitEnd();
+        inject.visitEnd();
+        addBody(method, INJECTION, 2, false);
+
+        writer.visitEnd();
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates {@link #CALLBACK_TARGET}, an <code>IntUnaryOperator</code> returning its operand plus one.
+     */
+    public static byte[] callbackTarget() {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, CALLBACK_TARGET, null, "java/lang/Object", new String[] { "java/util/function/IntUnaryOperator" });
+        writer.visitField(Opcodes.ACC_PUBLIC, "counter", "I", null, null).visitEnd();
+
+        addConstructor(writer);
+
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "applyAsInt", "(I)I", null, null);
+        method.visitCode();
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitInsn(Opcodes.ICONST_1);
+        method.visitInsn(Opcodes.IADD);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        writer.visitEnd();
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * Creates {@link #CALLBACK_INJECTION}, hooking the start of {@link #callbackTarget()} for negative operands.
+     * The {@link InjectType#INSERT_START} hook counts them, the {@link InjectType#CALLBACK} one cancels the target.
+     */
+    public static byte[] callbackInjection(InjectType type) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER | Opcodes.ACC_ABSTRACT, CALLBACK_INJECTION, null, "java/lang/Object", null);
+        writer.visitField(Opcodes.ACC_PUBLIC, "counter", "I", null, null).visitEnd();
+
+        AnnotationVisitor injectable = writer.visitAnnotation(Type.getDescriptor(Injectable.class), true);
+        injectable.visit("target", CALLBACK_TARGET.replace('/', '.'));
+        injectable.visitEnd();
+
+        addConstructor(writer);
+
+        boolean callback = type == InjectType.CALLBACK;
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "applyAsInt", callback ? "(I" + InjectType.CALLBACK_INFO + ")I" : "(I)I", null, null);
+
+        AnnotationVisitor inject = method.visitAnnotation(Type.getDescriptor(Inject.class), true);
+        inject.visitEnum("type", Type.getDescriptor(InjectType.class), type.name());
+        inject.visitEnd();
+
+        Label end = new Label();
+
+        method.visitCode();
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitJumpInsn(Opcodes.IFGE, end);
+
+        if (callback) {
+            method.visitVarInsn(Opcodes.ALOAD, 2);
+            method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type.getType(InjectType.CALLBACK_INFO).getInternalName(), "cancel", "()V", false);
+        } else {
+            method.visitVarInsn(Opcodes.ALOAD, 0);
+            method.visitInsn(Opcodes.DUP);
+            method.visitFieldInsn(Opcodes.GETFIELD, CALLBACK_INJECTION, "counter", "I");
+            method.visitInsn(Opcodes.ICONST_1);
+            method.visitInsn(Opcodes.IADD);
+            method.visitFieldInsn(Opcodes.PUTFIELD, CALLBACK_INJECTION, "counter", "I");
+        }
+
+        method.visitLabel(end);
+        method.visitInsn(Opcodes.ICONST_M1);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+
+        writer.visitEnd();
+
+        return writer.toByteArray();
+    }
+
+    /**
+     * @return an injects.json listing the given number of injection classes
+     */
+    public static String config(int injects) {
+        StringBuilder builder = new StringBuilder("{\n  \"injects\": [\n");
+
+        for (int i = 0; i < injects; i++)
+            builder.append("    \"bench.injects.EntityInject").append(i).append(i + 1 < injects ? "\",\n" : "\"\n");
+
+        return builder.append("  ]\n}\n").toString();
+    }
+
+    private static void addConstructor(ClassWriter writer) {
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        method.visitCode();
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    private static void addMethod(ClassWriter writer, String owner, String name, boolean callsHelper) {
+        addBody(writer.visitMethod(Opcodes.ACC_PUBLIC, name, "()V", null, null), owner, 1, callsHelper);
+    }
+
+    /**
+     * Writes <code>this.counter += increment</code>, laid out as javac does with debug information:
+     * the body ends with the return instruction followed by the end label of the local variables.
+     */
+    private static void addBody(MethodVisitor method, String owner, int increment, boolean callsHelper) {
+        Label start = new Label();
+        Label end = new Label();
+
+        method.visitCode();
+        method.visitLabel(start);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitInsn(Opcodes.DUP);
+        method.visitFieldInsn(Opcodes.GETFIELD, owner, "counter", "I");
+        method.visitIntInsn(Opcodes.BIPUSH, increment);
+        method.visitInsn(Opcodes.IADD);
+        method.visitFieldInsn(Opcodes.PUTFIELD, owner, "counter", "I");
+
+        if (callsHelper) {
+            method.visitVarInsn(Opcodes.ALOAD, 0);
+            method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, "helper", "()V", false);
+        }
+
+        method.visitInsn(Opcodes.RETURN);
+        method.visitLabel(end);
+        method.visitLocalVariable("this", "L" + owner + ";", null, start, end, 0);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    /**
+     * Writes a loop over its int parameter, so the method has frames to compute without any object type to merge.
+     */
+    private static void addFillerMethod(ClassWriter writer, String name) {
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, name, "(I)I", null, null);
+        Label loop = new Label();
+        Label end = new Label();
+
+        method.visitCode();
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitVarInsn(Opcodes.ISTORE, 2);
+        method.visitLabel(loop);
+        method.visitVarInsn(Opcodes.ILOAD, 2);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitJumpInsn(Opcodes.IF_ICMPGE, end);
+        method.visitVarInsn(Opcodes.ILOAD, 2);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitInsn(Opcodes.IMUL);
+        method.visitInsn(Opcodes.POP);
+        method.visitIincInsn(2, 1);
+        method.visitJumpInsn(Opcodes.GOTO, loop);
+        method.visitLabel(end);
+        method.visitVarInsn(Opcodes.ILOAD, 2);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+    }
+
+    private static void addClass(Map<String, byte[]> classes, String name, String superName, String... interfaces) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, interfaces);
+        writer.visitEnd();
+
+        classes.put(name, writer.toByteArray());
+    }
+
+    private static void addInterface(Map<String, byte[]> classes, String name, String... interfaces) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, name, null, "java/lang/Object", interfaces);
+        writer.visitEnd();
+
+        classes.put(name, writer.toByteArray());
+    }
+}
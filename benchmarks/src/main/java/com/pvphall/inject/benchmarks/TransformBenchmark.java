@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.benchmarks;
+
+import com.pvphall.inject.InjectType;
+import com.pvphall.inject.Injects;
+import com.pvphall.inject.transformers.InjectTransformer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time taken by {@link InjectTransformer} to weave every inject type into a small and a large class,
+ * from the original bytes to the written ones, through a class tree or in a single streaming pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransformBenchmark {
+
+    private static final String TARGET = Fixtures.TARGET.replace('/', '.');
+    private static final String OTHER = "bench.Other";
+
+    @Param({"10", "500"})
+    public int fillerMethods;
+
+    @Param({"false", "true"})
+    public boolean streaming;
+
+    private FixtureClassLoader loader;
+    private byte[] target;
+    private InjectTransformer transformer;
+
+    @Setup
+    public void setup() {
+        Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        classes.put(Fixtures.TARGET, Fixtures.target(this.fillerMethods));
+        classes.put(Fixtures.INJECTION, Fixtures.injection(InjectType.values()));
+
+        this.loader = new FixtureClassLoader(classes);
+        this.target = classes.get(Fixtures.TARGET);
+
+        System.setProperty("inject.streaming", String.valueOf(this.streaming));
+
+        String config = "{\"injects\": [\"" + Fixtures.INJECTION.replace('/', '.') + "\"]}";
+        Injects.getInstance().loadConfig(new ByteArrayInputStream(config.getBytes(StandardCharsets.UTF_8)));
+
+        this.transformer = new InjectTransformer(this.loader);
+    }
+
+    @Benchmark
+    public byte[] transform() {
+        return this.transformer.transform(TARGET, TARGET, this.target);
+    }
+
+    @Benchmark
+    public byte[] withoutInjection() {
+        return this.transformer.transform(OTHER, OTHER, this.target);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.maven;
+
+import com.pvphall.inject.Injects;
+import com.pvphall.inject.Streams;
+import com.pvphall.inject.config.Manifest;
+import com.pvphall.inject.config.WeaveOptions;
+import com.pvphall.inject.transformers.InjectTransformer;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Weaves the injections of the project into the classes of a target jar at build time.
+ *
+ * The injection classes and their manifest (or injects.json) are read from the project's output directory, and
+ * every woven target class is written to the output directory. The weaving goes through the
+ * same {@link InjectTransformer} as at runtime, so the woven classes are the ones a launch would
+ * produce and it does not need to register InjectClassTransformer anymore. The runtime features read from the
+ * <code>inject.*</code> system properties, e.g. the cache or the hook counters, are never used by the build.
+ */
+@Mojo(name = "weave", defaultPhase = LifecyclePhase.PROCESS_CLASSES, requiresDependencyResolution = ResolutionScope.COMPILE)
+public class WeaveMojo extends AbstractMojo {
+
+    @Parameter(property = "inject.targetJar", required = true)
+    private File targetJar;
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+    private File classesDirectory;
+
+    @Parameter(property = "inject.outputDirectory", defaultValue = "${project.build.directory}/woven-classes", required = true)
+    private File outputDirectory;
+
+    @Parameter(defaultValue = "${project.compileClasspathElements}", readonly = true, required = true)
+    private List<String> classpathElements;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        File manifest = new File(this.classesDirectory, Manifest.RESOURCE);
+        File config = manifest.isFile() ? manifest : new File(this.classesDirectory, "injects.json");
+
+        if (!config.isFile())
+            throw new MojoExecutionException("Could not find " + manifest + " nor " + config);
+
+        if (!this.targetJar.isFile())
+            throw new MojoExecutionException("Could not find target jar " + this.targetJar);
+
+        try (InputStream inputStream = new FileInputStream(config)) {
+            if (config == manifest)
+                Injects.getInstance().loadManifest(inputStream);
+            else
+                Injects.getInstance().loadConfig(inputStream);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not read " + config, e);
+        }
+
+        try (URLClassLoader classLoader = new URLClassLoader(this.getClasspath(), this.getClass().getClassLoader());
+             JarFile jarFile = new JarFile(this.targetJar)) {
+            // Injection classes and targets are only read as resources, none of them is ever loaded
+            InjectTransformer transformer = new InjectTransformer(classLoader, new WeaveOptions());
+
+            int woven = 0;
+            Enumeration<JarEntry> entries = jarFile.entries();
+
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String entryName = entry.getName();
+
+                if (!entryName.endsWith(".class"))
+                    continue;
+
+                String className = entryName.substring(0, entryName.length() - ".class".length()).replace("/", ".");
+
+                if (!transformer.shouldTransform(className))
+                    continue;
+
+                byte[] bytes;
+
+                try (InputStream inputStream = jarFile.getInputStream(entry)) {
+                    bytes = Streams.readFully(inputStream);
+                }
+
+                byte[] transformed = transformer.transform(className, className, bytes);
+
+                if (transformed == bytes)
+                    continue;
+
+                this.write(entryName, transformed);
+                woven++;
+            }
+
+            this.getLog().info("Woven " + woven + " classes from " + this.targetJar.getName() + " into " + this.outputDirectory);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not weave " + this.targetJar, e);
+        }
+    }
+
+    private URL[] getClasspath() throws IOException {
+        List<URL> urls = new ArrayList<URL>();
+        urls.add(this.classesDirectory.toURI().toURL());
+        urls.add(this.targetJar.toURI().toURL());
+
+        for (String element : this.classpathElements)
+            urls.add(new File(element).toURI().toURL());
+
+        return urls.toArray(new URL[0]);
+    }
+
+    private void write(String entryName, byte[] bytes) throws IOException {
+        File file = new File(this.outputDirectory, entryName);
+        File parent = file.getParentFile();
+
+        if (!parent.isDirectory() && !parent.mkdirs())
+            throw new IOException("Could not create directory " + parent);
+
+        try (OutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.maven;
+
+import com.pvphall.inject.Injects;
+import com.pvphall.inject.Streams;
+import com.pvphall.inject.transformers.InjectClassTransformer;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WeaveMojoTest {
+
+    private static final String[] TARGETS = { "fixtures/Game", "fixtures/Untouched" };
+
+    private Path directory;
+    private File targetJar;
+    private File classesDirectory;
+    private File outputDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("weave");
+        this.classesDirectory = this.directory.resolve("classes").toFile();
+        this.outputDirectory = this.directory.resolve("woven-classes").toFile();
+        this.targetJar = this.directory.resolve("game.jar").toFile();
+
+        File targetClasses = this.directory.resolve("game").toFile();
+
+        this.compile(targetClasses, null,
+                "fixtures/Game", "package fixtures;\n"
+                        + "public class Game {\n"
+                        + "    public int ticks;\n"
+                        + "    public void tick() { ticks++; }\n"
+                        + "    public int score(int x) { return helper(x) * 2; }\n"
+                        + "    int helper(int x) { return x + 1; }\n"
+                        + "}\n",
+                "fixtures/Untouched", "package fixtures;\n"
+                        + "public class Untouched {\n"
+                        + "    public int value() { return 1; }\n"
+                        + "}\n");
+
+        this.compile(this.classesDirectory, targetClasses,
+                "fixtures/GameInject", "package fixtures;\n"
+                        + "import com.pvphall.inject.InjectType;\n"
+                        + "import com.pvphall.inject.annotations.*;\n"
+                        + "@Injectable(target = \"fixtures.Game\")\n"
+                        + "public abstract class GameInject {\n"
+                        + "    public int ticks;\n"
+                        + "    @Inject(type = InjectType.INSERT_START)\n"
+                        + "    public void tick() { ticks += 10; }\n"
+                        + "    @Inject(type = InjectType.PRECISE, precise = @Precise(type = PreciseType.METHOD, name = \"helper\"))\n"
+                        + "    public int score(int x) { try { ticks += Integer.parseInt(\"1\"); } catch (NumberFormatException e) { ticks = -1; } return 0; }\n"
+                        + "}\n");
+
+        Files.write(this.classesDirectory.toPath().resolve("injects.json"), "{\"injects\": [\"fixtures.GameInject\"]}".getBytes(StandardCharsets.UTF_8));
+
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(this.targetJar.toPath()))) {
+            for (String target : TARGETS) {
+                jar.putNextEntry(new JarEntry(target + ".class"));
+                jar.write(Files.readAllBytes(targetClasses.toPath().resolve(target + ".class")));
+                jar.closeEntry();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * The classes woven at build time are the ones LaunchWrapper would weave at runtime, byte for byte.
+     */
+    @Test
+    public void wovenClassesMatchRuntimeWeaving() throws Exception {
+        this.execute();
+
+        assertFalse(new File(this.outputDirectory, "fixtures/Untouched.class").exists());
+        assertArrayEquals(this.weaveAtRuntime("fixtures/Game"), Files.readAllBytes(new File(this.outputDirectory, "fixtures/Game.class").toPath()));
+
+        // The woven class is usable as is
+        try (URLClassLoader classLoader = new URLClassLoader(new URL[] { this.outputDirectory.toURI().toURL() }, this.getClass().getClassLoader())) {
+            Class<?> game = classLoader.loadClass("fixtures.Game");
+            Object instance = game.getConstructor().newInstance();
+
+            game.getMethod("tick").invoke(instance);
+            assertEquals(4, game.getMethod("score", int.class).invoke(instance, 1));
+            assertEquals(12, game.getField("ticks").get(instance));
+        }
+    }
+
+    /**
+     * The runtime features read from the system properties, e.g. pre-weaving, the cache or the hook counters, are left
+     * to the launch: the build weaves the same classes with them set.
+     */
+    @Test
+    public void ignoresRuntimeProperties() throws Exception {
+        String[] properties = { "inject.eager", "inject.streaming", "inject.counters", "inject.cache" };
+        String[] values = { "true", "true", "true", this.directory.resolve("cache.pack").toString() };
+
+        for (int i = 0; i < properties.length; i++)
+            System.setProperty(properties[i], values[i]);
+
+        try {
+            this.execute();
+        } finally {
+            for (String property : properties)
+                System.clearProperty(property);
+        }
+
+        assertArrayEquals(this.weaveAtRuntime("fixtures/Game"), Files.readAllBytes(new File(this.outputDirectory, "fixtures/Game.class").toPath()));
+    }
+
+    private void execute() throws ReflectiveOperationException, MojoExecutionException {
+        WeaveMojo mojo = new WeaveMojo();
+        this.set(mojo, "targetJar", this.targetJar);
+        this.set(mojo, "classesDirectory", this.classesDirectory);
+        this.set(mojo, "outputDirectory", this.outputDirectory);
+        this.set(mojo, "classpathElements", Collections.<String>emptyList());
+        mojo.execute();
+    }
+
+    /**
+     * @return the class woven by LaunchWrapper at runtime
+     */
+    private byte[] weaveAtRuntime(String className) throws IOException {
+        URL[] urls = { this.classesDirectory.toURI().toURL(), this.targetJar.toURI().toURL() };
+
+        try (URLClassLoader classLoader = new URLClassLoader(urls, this.getClass().getClassLoader());
+             InputStream config = new FileInputStream(new File(this.classesDirectory, "injects.json"))) {
+            Injects.getInstance().loadConfig(config);
+            InjectClassTransformer transformer = new InjectClassTransformer(classLoader);
+
+            byte[] original = this.read(classLoader, className);
+            byte[] woven = transformer.transform(className.replace('/', '.'), className.replace('/', '.'), original);
+
+            assertTrue(woven != original);
+
+            return woven;
+        }
+    }
+
+    /**
+     * @param sources the internal name of each class followed by its source
+     */
+    private void compile(File output, File classpath, String... sources) throws IOException {
+        Path sourceDirectory = Files.createTempDirectory(this.directory, "sources");
+        List<String> arguments = new ArrayList<String>();
+        String path = System.getProperty("java.class.path") + (classpath != null ? File.pathSeparator + classpath : "");
+
+        arguments.add("-proc:none");
+        arguments.add("-classpath");
+        arguments.add(path);
+        arguments.add("-d");
+        arguments.add(output.getPath());
+
+        for (int i = 0; i < sources.length; i += 2) {
+            Path source = sourceDirectory.resolve(sources[i] + ".java");
+            Files.createDirectories(source.getParent());
+            Files.write(source, sources[i + 1].getBytes(StandardCharsets.UTF_8));
+            arguments.add(source.toString());
+        }
+
+        if (!output.isDirectory() && !output.mkdirs())
+            throw new IOException("Could not create directory " + output);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+    }
+
+    private byte[] read(ClassLoader classLoader, String className) throws IOException {
+        try (InputStream inputStream = classLoader.getResourceAsStream(className + ".class")) {
+            return Streams.readFully(inputStream);
+        }
+    }
+
+    private void set(WeaveMojo mojo, String name, Object value) throws ReflectiveOperationException {
+        Field field = WeaveMojo.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+import com.pvphall.inject.metrics.ClassMetrics;
+import com.pvphall.inject.metrics.TransformMetrics;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Size-bounded cache of class headers, shared by every {@link SafeClassWriter} of a class loader.
+ * Loaders may define different classes under the same name, each one has its own hierarchy,
+ * dropped along with it.
+ *
+ * The least recently used entries are evicted once <code>inject.hierarchy.size</code>
+ * (4096 by default) classes are cached. Common super classes are memoized per pair of
+ * types, and the memo is emptied once it holds <code>inject.hierarchy.pairs</code>
+ * (65536 by default) results.
+ */
+public class ClassHierarchy {
+
+    private static final int SIZE = Integer.getInteger("inject.hierarchy.size", 4096);
+    private static final int PAIRS = Integer.getInteger("inject.hierarchy.pairs", 65536);
+
+    private static final Map<ClassLoader, ClassHierarchy> instances = new WeakHashMap<ClassLoader, ClassHierarchy>();
+
+    private final Map<String, ClassInfo> infos;
+    private final Map<String, Map<String, String>> commonSuperClasses = new ConcurrentHashMap<String, Map<String, String>>();
+    private final AtomicInteger commonSuperClassesSize = new AtomicInteger();
+    private final int maxPairs;
+
+    public ClassHierarchy(final int maxSize, int maxPairs) {
+        this.maxPairs = maxPairs;
+        this.infos = new LinkedHashMap<String, ClassInfo>(256, 0.75F, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ClassInfo> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param loader the class loader of this hierarchy, reading the header when it is not cached
+     */
+    public ClassInfo getInfo(String type, ClassLoader loader) throws IOException {
+        ClassInfo info;
+
+        synchronized (this.infos) {
+            info = this.infos.get(type);
+        }
+
+        if (info != null)
+            return info;
+
+        // Read outside of the lock, two threads may load the same header but never block each other on IO
+        info = this.readInfo(type, loader);
+
+        synchronized (this.infos) {
+            this.infos.put(type, info);
+        }
+
+        return info;
+    }
+
+    private ClassInfo readInfo(String type, ClassLoader loader) throws IOException {
+        ClassMetrics metrics = TransformMetrics.current();
+
+        if (metrics != null)
+            metrics.addResourceLoad();
+
+        InputStream is = loader.getResourceAsStream(type + ".class");
+
+        if (is == null)
+            throw new IOException("Cannot create ClassReader for type " + type);
+
+        try {
+            ClassReader reader = new ClassReader(is);
+
+            return new ClassInfo(type, reader.getSuperName(), reader.getInterfaces(), reader.getAccess());
+        } finally {
+            is.close();
+        }
+    }
+
+    public String getCommonSuperClass(String type1, String type2) {
+        Map<String, String> results = this.commonSuperClasses.get(type1);
+
+        return results != null ? results.get(type2) : null;
+    }
+
+    public void putCommonSuperClass(String type1, String type2, String commonSuperClass) {
+        if (this.commonSuperClassesSize.incrementAndGet() > this.maxPairs)
+            this.clearCommonSuperClasses();
+
+        this.commonSuperClasses
+                .computeIfAbsent(type1, type -> new ConcurrentHashMap<String, String>())
+                .put(type2, commonSuperClass);
+    }
+
+    public void clearCommonSuperClasses() {
+        this.commonSuperClasses.clear();
+        this.commonSuperClassesSize.set(0);
+    }
+
+    public void clear() {
+        synchronized (this.infos) {
+            this.infos.clear();
+        }
+
+        this.clearCommonSuperClasses();
+    }
+
+    /**
+     * @return the hierarchy of the classes seen from the loader, created the first time it is asked for
+     */
+    public static ClassHierarchy getInstance(ClassLoader loader) {
+        synchronized (instances) {
+            return instances.computeIfAbsent(loader, key -> new ClassHierarchy(SIZE, PAIRS));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+/**
+ * Header of a class as needed to compute frames: its super class, interfaces and access flags.
+ */
+public class ClassInfo {
+
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+    private final int access;
+    private volatile String[] ancestors;
+
+    public ClassInfo(String name, String superName, String[] interfaces, int access) {
+        this.name = name.intern();
+        this.superName = superName != null ? superName.intern() : null;
+        this.interfaces = interfaces;
+        this.access = access;
+
+        for (int i = 0; i < interfaces.length; i++)
+            interfaces[i] = interfaces[i].intern();
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public String getSuperName() {
+        return this.superName;
+    }
+
+    public String[] getInterfaces() {
+        return this.interfaces;
+    }
+
+    public int getAccess() {
+        return this.access;
+    }
+
+    /**
+     * @return the interned names of this class and its super classes, excluding java/lang/Object,
+     *         or null if they were not resolved yet
+     */
+    public String[] getAncestors() {
+        return this.ancestors;
+    }
+
+    public void setAncestors(String[] ancestors) {
+        this.ancestors = ancestors;
+    }
+}
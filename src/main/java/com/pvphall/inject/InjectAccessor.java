@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * An abstract method of an injection class annotated with {@link com.pvphall.inject.annotations.Accessor}.
+ */
+public class InjectAccessor {
+
+    private final MethodNode method;
+    private final String field;
+
+    public InjectAccessor(MethodNode method, String field) {
+        this.method = method;
+        this.field = field.isEmpty() ? getFieldName(method.name) : field;
+    }
+
+    private static String getFieldName(String methodName) {
+        for (String prefix : new String[] { "get", "set", "is" })
+            if (methodName.length() > prefix.length() && methodName.startsWith(prefix))
+                return Character.toLowerCase(methodName.charAt(prefix.length())) + methodName.substring(prefix.length() + 1);
+
+        return methodName;
+    }
+
+    public MethodNode getMethod() {
+        return this.method;
+    }
+
+    /**
+     * @return the name of the field of the target the method gets or sets
+     */
+    public String getField() {
+        return this.field;
+    }
+
+    public boolean isSetter() {
+        return Type.getArgumentTypes(this.method.desc).length == 1 && Type.getReturnType(this.method.desc) == Type.VOID_TYPE;
+    }
+}
@@ -24,23 +24,338 @@
 
 package com.pvphall.inject;
 
-import org.objectweb.asm.tree.MethodNode;
+import com.pvphall.inject.annotations.Accessor;
+import com.pvphall.inject.annotations.Inject;
+import com.pvphall.inject.annotations.InjectField;
+import com.pvphall.inject.annotations.Injectable;
+import com.pvphall.inject.annotations.Precise;
+import com.pvphall.inject.annotations.PreciseShift;
+import com.pvphall.inject.annotations.PreciseType;
+import com.pvphall.inject.config.Manifest;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * An injection class, with its annotations read straight from its bytes so it never has to be loaded.
+ */
 public class InjectClass {
 
-    private List<MethodNode> methods;
+    private static final String INJECTABLE = Type.getDescriptor(Injectable.class);
+    private static final String INJECT = Type.getDescriptor(Inject.class);
+    private static final String INJECT_FIELD = Type.getDescriptor(InjectField.class);
+    private static final String ACCESSOR = Type.getDescriptor(Accessor.class);
+
+    private final String name;
+    private final String target;
+    private final List<String> interfaces;
+    private final List<InjectMethod> injectMethods;
+    private final Map<String, MethodNode> methods;
+    private final Map<String, MethodNode> methodsByName;
+    private final List<FieldNode> fields;
+    private final List<InjectAccessor> accessors;
+    private final Map<String, InjectTemplate> initializers;
+    private final Map<String, InjectTemplate> staticInitializers;
+
+    public InjectClass(ClassNode node) {
+        this(node, Collections.<ClassNode>emptyList());
+    }
+
+    /**
+     * @param interfaceNodes the interfaces added to the target, and the ones they extend, whose accessors are implemented too
+     */
+    public InjectClass(ClassNode node, List<ClassNode> interfaceNodes) {
+        this.name = node.name;
+        this.interfaces = node.interfaces;
+        this.injectMethods = new ArrayList<InjectMethod>();
+        this.methods = new HashMap<String, MethodNode>();
+        this.methodsByName = new HashMap<String, MethodNode>();
+
+        AnnotationNode injectable = findAnnotation(node.visibleAnnotations, INJECTABLE);
+        this.target = injectable != null ? (String) getValue(injectable, "target", null) : null;
+
+        for (MethodNode method : node.methods) {
+            this.indexMethod(method);
+
+            AnnotationNode inject = findAnnotation(method.visibleAnnotations, INJECT);
+
+            if (inject != null)
+                this.injectMethods.add(new InjectMethod(this.name, method, getEnum(inject, "type", InjectType.class, null), this.readPrecise(inject), this.prepare(method),
+                        (String) getValue(inject, "method", "")));
+        }
+
+        this.fields = readFields(node);
+        this.accessors = readAccessors(node, interfaceNodes);
+        this.initializers = this.prepareInitializers(false);
+        this.staticInitializers = this.prepareInitializers(true);
+    }
+
+    public InjectClass(ClassNode node, Manifest.Entry entry) {
+        this(node, entry, Collections.<ClassNode>emptyList());
+    }
+
+    /**
+     * Uses the annotation values of the compile-time manifest instead of scanning the annotations of the class.
+     */
+    public InjectClass(ClassNode node, Manifest.Entry entry, List<ClassNode> interfaceNodes) {
+        this.name = node.name;
+        this.interfaces = node.interfaces;
+        this.target = entry.getTarget();
+        this.injectMethods = new ArrayList<InjectMethod>();
+        this.methods = new HashMap<String, MethodNode>();
+        this.methodsByName = new HashMap<String, MethodNode>();
+
+        for (MethodNode method : node.methods)
+            this.indexMethod(method);
+
+        for (Manifest.MethodEntry method : entry.getMethods()) {
+            MethodNode methodNode = this.getMethodNode(method.getName(), method.getDesc());
+
+            if (methodNode == null) {
+                System.out.println("Inject - Manifest method not found in " + this.name + ": " + method.getName() + method.getDesc());
+                continue;
+            }
+
+            this.injectMethods.add(new InjectMethod(this.name, methodNode, method.getType(), method.getPrecise(), this.prepare(methodNode), method.getTargetMethod()));
+        }
+
+        // Only the methods are in the manifest, fields and accessors are rare enough to be read from the class
+        this.fields = readFields(node);
+        this.accessors = readAccessors(node, interfaceNodes);
+        this.initializers = this.prepareInitializers(false);
+        this.staticInitializers = this.prepareInitializers(true);
+    }
+
+    private InjectTemplate prepare(MethodNode method) {
+        return new InjectTemplate(method, this.name, this.target != null ? this.target.replace('.', '/') : null);
+    }
+
+    private static List<FieldNode> readFields(ClassNode node) {
+        List<FieldNode> fields = new ArrayList<FieldNode>();
+
+        for (FieldNode field : node.fields)
+            if ((field.access & Opcodes.ACC_SYNTHETIC) == 0 && findAnnotation(field.visibleAnnotations, INJECT_FIELD) != null)
+                fields.add(field);
+
+        return fields;
+    }
+
+    /**
+     * The accessors declared by the class come first, an interface method it declares again is only read once.
+     */
+    private static List<InjectAccessor> readAccessors(ClassNode node, List<ClassNode> interfaceNodes) {
+        List<InjectAccessor> accessors = new ArrayList<InjectAccessor>();
+        Map<String, MethodNode> methods = new LinkedHashMap<String, MethodNode>();
+
+        for (MethodNode method : node.methods)
+            methods.put(method.name + method.desc, method);
+
+        for (ClassNode interfaceNode : interfaceNodes)
+            for (MethodNode method : interfaceNode.methods)
+                methods.putIfAbsent(method.name + method.desc, method);
+
+        for (MethodNode method : methods.values()) {
+            AnnotationNode accessor = findAnnotation(method.visibleAnnotations, ACCESSOR);
+
+            if (accessor != null)
+                accessors.add(new InjectAccessor(method, (String) getValue(accessor, "value", "")));
+        }
+
+        return accessors;
+    }
+
+    /**
+     * Takes the initializers of the injected fields out of the constructor, or static initializer, of the injection class.
+     * The compiler puts them right after the call to the super constructor, each one ending by setting its field: the
+     * code of a field runs from the end of the previous field set by the class up to its own. Initializers of the other
+     * fields are left out, so is the rest of the constructor, which an injection class usually leaves empty.
+     *
+     * @return the initializer of each injected field having one, in their order, to insert in the constructors or static initializer of the target
+     */
+    private Map<String, InjectTemplate> prepareInitializers(boolean isStatic) {
+        Map<String, InjectTemplate> initializers = new LinkedHashMap<String, InjectTemplate>();
+        MethodNode source = this.getMethodNode(isStatic ? "<clinit>" : "<init>", "()V");
+        AbstractInsnNode start = source != null && !isStatic ? findSuperCall(source) : null;
+
+        if (source == null || (!isStatic && start == null))
+            return initializers;
+
+        Map<String, FieldNode> fields = new HashMap<String, FieldNode>();
+
+        for (FieldNode field : this.fields)
+            if (((field.access & Opcodes.ACC_STATIC) != 0) == isStatic)
+                fields.put(field.name, field);
+
+        if (fields.isEmpty())
+            return initializers;
+
+        Map<LabelNode, LabelNode> labels = new HashMap<LabelNode, LabelNode>();
+
+        for (AbstractInsnNode insn : source.instructions)
+            if (insn instanceof LabelNode)
+                labels.put((LabelNode) insn, new LabelNode());
+
+        MethodNode initializer = new MethodNode(isStatic ? Opcodes.ACC_STATIC : 0, source.name, source.desc, null, null);
+        AbstractInsnNode insn = isStatic ? source.instructions.getFirst() : start.getNext();
+
+        for (; insn != null && insn.getOpcode() != Opcodes.RETURN; insn = insn.getNext()) {
+            // Line numbers would refer to labels left out, and frames are computed again
+            if (insn instanceof LineNumberNode || insn instanceof FrameNode)
+                continue;
+
+            initializer.instructions.add(insn.clone(labels));
+
+            if (insn.getOpcode() != (isStatic ? Opcodes.PUTSTATIC : Opcodes.PUTFIELD) || !((FieldInsnNode) insn).owner.equals(this.name))
+                continue;
+
+            if (fields.containsKey(((FieldInsnNode) insn).name)) {
+                initializer.instructions.add(new InsnNode(Opcodes.RETURN));
+                initializer.maxLocals = source.maxLocals;
+                initializers.put(((FieldInsnNode) insn).name, this.prepare(initializer));
+            }
+
+            initializer = new MethodNode(isStatic ? Opcodes.ACC_STATIC : 0, source.name, source.desc, null, null);
+        }
+
+        return initializers;
+    }
+
+    /**
+     * @return the call to the super constructor, or to another constructor of the class, made by a constructor.
+     * Calls to constructors of the objects it creates are skipped by pairing them with their NEW instruction.
+     */
+    public static MethodInsnNode findSuperCall(MethodNode constructor) {
+        int created = 0;
+
+        for (AbstractInsnNode insn : constructor.instructions) {
+            if (insn.getOpcode() == Opcodes.NEW) {
+                created++;
+            } else if (insn.getOpcode() == Opcodes.INVOKESPECIAL && ((MethodInsnNode) insn).name.equals("<init>")) {
+                if (created == 0)
+                    return (MethodInsnNode) insn;
+
+                created--;
+            }
+        }
+
+        return null;
+    }
+
+    private void indexMethod(MethodNode method) {
+        this.methods.put(method.name + method.desc, method);
+        this.methodsByName.putIfAbsent(method.name, method);
+    }
+
+    private List<InjectPrecise> readPrecise(AnnotationNode inject) {
+        // Annotation arrays are read as lists of their elements, nested annotations being nodes
+        List<?> values = (List<?>) getValue(inject, "precise", Collections.emptyList());
+        List<InjectPrecise> precise = new ArrayList<InjectPrecise>(values.size());
+
+        for (Object element : values) {
+            AnnotationNode value = (AnnotationNode) element;
+
+            precise.add(new InjectPrecise(
+                    getEnum(value, "type", PreciseType.class, null),
+                    (String) getValue(value, "name", ""),
+                    (String) getValue(value, "owner", ""),
+                    (String) getValue(value, "desc", ""),
+                    (Integer) getValue(value, "ordinal", 0),
+                    getEnum(value, "shift", PreciseShift.class, PreciseShift.BEFORE)
+            ));
+        }
+
+        return precise;
+    }
+
+    private static AnnotationNode findAnnotation(List<AnnotationNode> annotations, String desc) {
+        if (annotations == null)
+            return null;
+
+        for (AnnotationNode annotation : annotations)
+            if (annotation.desc.equals(desc))
+                return annotation;
+
+        return null;
+    }
+
+    /**
+     * Default values are not part of the class bytes, they have to match the ones of the annotation, e.g. {@link Precise#name()}.
+     */
+    private static Object getValue(AnnotationNode annotation, String key, Object defaultValue) {
+        if (annotation.values != null)
+            for (int i = 0; i < annotation.values.size(); i += 2)
+                if (annotation.values.get(i).equals(key))
+                    return annotation.values.get(i + 1);
+
+        return defaultValue;
+    }
+
+    private static <T extends Enum<T>> T getEnum(AnnotationNode annotation, String key, Class<T> enumClass, T defaultValue) {
+        // Enum values are stored as their descriptor followed by their name
+        String[] value = (String[]) getValue(annotation, key, null);
+
+        return value != null ? Enum.valueOf(enumClass, value[1]) : defaultValue;
+    }
+
+    /**
+     * @return the internal name of the injection class
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the value of {@link Injectable#target()}, or null if the class is not annotated
+     */
+    public String getTarget() {
+        return this.target;
+    }
+
+    public List<String> getInterfaces() {
+        return this.interfaces;
+    }
+
+    public List<InjectMethod> getInjectMethods() {
+        return this.injectMethods;
+    }
+
+    /**
+     * @return the fields annotated with {@link InjectField}, to add to the target
+     */
+    public List<FieldNode> getFields() {
+        return this.fields;
+    }
+
+    public List<InjectAccessor> getAccessors() {
+        return this.accessors;
+    }
+
+    /**
+     * @return the initializer of each injected instance field having one, by field name, in their order
+     */
+    public Map<String, InjectTemplate> getInitializers() {
+        return this.initializers;
+    }
+
+    /**
+     * @return the initializer of each injected static field having one, by field name, in their order
+     */
+    public Map<String, InjectTemplate> getStaticInitializers() {
+        return this.staticInitializers;
+    }
 
-    public InjectClass(List<MethodNode> methods) {
-        this.methods = methods;
+    public MethodNode getMethodNode(String targetMethodName, String targetMethodDesc) {
+        return this.methods.get(targetMethodName + targetMethodDesc);
     }
 
     public MethodNode getMethodNode(String targetMethodName) {
-        return this.methods
-                .stream()
-                .filter(method -> method.name.equals(targetMethodName))
-                .findFirst()
-                .orElse(null);
+        return this.methodsByName.get(targetMethodName);
     }
 }
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.List;
+
+/**
+ * A method of an injection class annotated with {@link com.pvphall.inject.annotations.Inject}.
+ */
+public class InjectMethod {
+
+    private final String owner;
+    private final MethodNode method;
+    private final InjectType type;
+    private final List<InjectPrecise> precise;
+    private final InjectTemplate template;
+    private final String targetMethod;
+
+    /**
+     * @param owner the internal name of the injection class declaring the method
+     * @param targetMethod the value of {@link com.pvphall.inject.annotations.Inject#method()}
+     */
+    public InjectMethod(String owner, MethodNode method, InjectType type, List<InjectPrecise> precise, InjectTemplate template, String targetMethod) {
+        this.owner = owner;
+        this.method = method;
+        this.type = type;
+        this.precise = precise;
+        this.template = template;
+        this.targetMethod = targetMethod;
+    }
+
+    /**
+     * @return the internal name of the injection class declaring the method
+     */
+    public String getOwner() {
+        return this.owner;
+    }
+
+    public MethodNode getMethod() {
+        return this.method;
+    }
+
+    public String getName() {
+        return this.method.name;
+    }
+
+    public String getDesc() {
+        return this.method.desc;
+    }
+
+    /**
+     * @return the name of the method targeted by this one
+     */
+    public String getTargetName() {
+        if (this.targetMethod.isEmpty())
+            return this.method.name;
+
+        int descStart = this.targetMethod.indexOf('(');
+
+        return descStart != -1 ? this.targetMethod.substring(0, descStart) : this.targetMethod;
+    }
+
+    /**
+     * @return the descriptor of the method targeted by this one, or null to target the first method with its name
+     */
+    public String getTargetDesc() {
+        int descStart = this.targetMethod.indexOf('(');
+
+        return descStart != -1 ? this.targetMethod.substring(descStart) : this.type.getTargetDesc(this.method.desc);
+    }
+
+    /**
+     * @return the value of {@link com.pvphall.inject.annotations.Inject#method()}, empty by default
+     */
+    public String getTargetMethod() {
+        return this.targetMethod;
+    }
+
+    public InjectType getType() {
+        return this.type;
+    }
+
+    public List<InjectPrecise> getPrecise() {
+        return this.precise;
+    }
+
+    /**
+     * @return the instructions of the method prepared for the target class, shared by every application
+     */
+    public InjectTemplate getTemplate() {
+        return this.template;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+import com.pvphall.inject.annotations.PreciseShift;
+import com.pvphall.inject.annotations.PreciseType;
+import com.pvphall.inject.api.transformers.InstructionIndex;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+
+public class InjectPrecise {
+
+    private final PreciseType type;
+    private final String name;
+    private final String owner;
+    private final String desc;
+    private final int ordinal;
+    private final PreciseShift shift;
+
+    public InjectPrecise(PreciseType type, String name) {
+        this(type, name, "", "", 0, PreciseShift.BEFORE);
+    }
+
+    /**
+     * @param owner the owner class, as a binary or internal name
+     */
+    public InjectPrecise(PreciseType type, String name, String owner, String desc, int ordinal, PreciseShift shift) {
+        this.type = type;
+        this.name = name;
+        this.owner = owner.replace('.', '/');
+        this.desc = desc;
+        this.ordinal = ordinal;
+        this.shift = shift;
+    }
+
+    /**
+     * Checks the owner and descriptor of an instruction, its type and name are the key it was found with.
+     *
+     * @see InstructionIndex
+     */
+    public boolean matches(AbstractInsnNode insn) {
+        String owner = null;
+        String desc = null;
+
+        if (insn instanceof MethodInsnNode) {
+            owner = ((MethodInsnNode) insn).owner;
+            desc = ((MethodInsnNode) insn).desc;
+        } else if (insn instanceof FieldInsnNode) {
+            owner = ((FieldInsnNode) insn).owner;
+            desc = ((FieldInsnNode) insn).desc;
+        } else if (insn instanceof TypeInsnNode) {
+            owner = ((TypeInsnNode) insn).desc;
+        } else if (this.type == PreciseType.CONSTANT) {
+            desc = InstructionIndex.getConstantType(insn).getDescriptor();
+        }
+
+        return (this.owner.isEmpty() || this.owner.equals(owner)) && (this.desc.isEmpty() || this.desc.equals(desc));
+    }
+
+    public PreciseType getType() {
+        return this.type;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return the internal name of the owner class, or an empty string for any class
+     */
+    public String getOwner() {
+        return this.owner;
+    }
+
+    public String getDesc() {
+        return this.desc;
+    }
+
+    public int getOrdinal() {
+        return this.ordinal;
+    }
+
+    public PreciseShift getShift() {
+        return this.shift;
+    }
+}
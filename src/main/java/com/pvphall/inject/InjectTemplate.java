@@ -0,0 +1,244 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The instructions of an injection method, prepared once when the injection class is registered.
+ *
+ * References to the injection class are moved to the target class up front. The prepared instructions
+ * are never modified afterwards: each application works on a {@link Stamp}, a copy with its own labels,
+ * so a template can be applied to any number of classes, from any number of threads.
+ */
+public class InjectTemplate {
+
+    private final Stamp body;
+    private final Stamp inline;
+    private final int parameterSize;
+
+    /**
+     * @param method the injection method, left untouched
+     * @param owner the internal name of the injection class
+     * @param targetOwner the internal name of the target class, or null to keep the references as is
+     */
+    public InjectTemplate(MethodNode method, String owner, String targetOwner) {
+        this.body = copy(method.instructions, method.tryCatchBlocks, method.localVariables, method.maxLocals, false);
+
+        if (targetOwner != null)
+            replaceOwner(this.body.instructions, owner, targetOwner);
+
+        this.inline = copy(this.body.instructions, this.body.tryCatchBlocks, this.body.localVariables, this.body.maxLocals, true);
+
+        // Slots of the receiver and of the parameters, they are shared with the target method
+        this.parameterSize = (Type.getArgumentsAndReturnSizes(method.desc) >> 2) - ((method.access & Opcodes.ACC_STATIC) != 0 ? 1 : 0);
+    }
+
+    /**
+     * @return a copy of the whole method body, returns included, e.g. to create a method from it
+     */
+    public Stamp stampBody() {
+        return copy(this.body.instructions, this.body.tryCatchBlocks, this.body.localVariables, this.body.maxLocals, false);
+    }
+
+    /**
+     * The receiver and parameters of the copy are the ones of the target method, which has the same descriptor.
+     * Its other locals are moved above the locals of the target, so they never overwrite them.
+     *
+     * @param target the method the copy is inserted in
+     * @return a copy of the body meant to be inserted in the target, running past its end instead of returning
+     */
+    public Stamp stampInline(MethodNode target) {
+        Stamp stamp = copy(this.inline.instructions, this.inline.tryCatchBlocks, this.inline.localVariables, this.inline.maxLocals, false);
+        int offset = target.maxLocals - this.parameterSize;
+
+        for (AbstractInsnNode insn : stamp.instructions) {
+            if (insn instanceof VarInsnNode)
+                ((VarInsnNode) insn).var = this.remapLocal(((VarInsnNode) insn).var, offset);
+            else if (insn instanceof IincInsnNode)
+                ((IincInsnNode) insn).var = this.remapLocal(((IincInsnNode) insn).var, offset);
+        }
+
+        Iterator<LocalVariableNode> iterator = stamp.localVariables.iterator();
+
+        while (iterator.hasNext()) {
+            LocalVariableNode local = iterator.next();
+
+            // The target already describes its receiver and parameters
+            if (local.index < this.parameterSize)
+                iterator.remove();
+            else
+                local.index += offset;
+        }
+
+        return new Stamp(stamp.instructions, stamp.tryCatchBlocks, stamp.localVariables, Math.max(target.maxLocals, stamp.maxLocals + offset));
+    }
+
+    private int remapLocal(int index, int offset) {
+        return index < this.parameterSize ? index : index + offset;
+    }
+
+    /**
+     * Copies instructions along with their own labels. When inlining, returns jump to the end of the copy
+     * instead, dropping the returned value.
+     */
+    private static Stamp copy(InsnList instructions, List<TryCatchBlockNode> tryCatchBlocks, List<LocalVariableNode> localVariables, int maxLocals, boolean inline) {
+        Map<LabelNode, LabelNode> labels = new HashMap<LabelNode, LabelNode>();
+
+        for (AbstractInsnNode insn : instructions)
+            if (insn instanceof LabelNode)
+                labels.put((LabelNode) insn, new LabelNode());
+
+        InsnList copy = new InsnList();
+        LabelNode end = new LabelNode();
+
+        for (AbstractInsnNode insn : instructions) {
+            int opcode = insn.getOpcode();
+
+            if (!inline || opcode < Opcodes.IRETURN || opcode > Opcodes.RETURN) {
+                copy.add(insn.clone(labels));
+                continue;
+            }
+
+            if (opcode == Opcodes.LRETURN || opcode == Opcodes.DRETURN)
+                copy.add(new InsnNode(Opcodes.POP2));
+            else if (opcode != Opcodes.RETURN)
+                copy.add(new InsnNode(Opcodes.POP));
+
+            copy.add(new JumpInsnNode(Opcodes.GOTO, end));
+        }
+
+        if (inline) {
+            // The last return falls through to the end instead of jumping to it
+            AbstractInsnNode last = copy.getLast();
+
+            while (last != null && last.getOpcode() == -1)
+                last = last.getPrevious();
+
+            if (last != null && last.getOpcode() == Opcodes.GOTO && ((JumpInsnNode) last).label == end)
+                copy.remove(last);
+
+            copy.add(end);
+        }
+
+        List<TryCatchBlockNode> tryCatchBlocksCopy = new ArrayList<TryCatchBlockNode>();
+
+        if (tryCatchBlocks != null)
+            for (TryCatchBlockNode block : tryCatchBlocks)
+                tryCatchBlocksCopy.add(cloneTryCatchBlock(block, labels));
+
+        List<LocalVariableNode> localVariablesCopy = new ArrayList<LocalVariableNode>();
+
+        if (localVariables != null)
+            for (LocalVariableNode local : localVariables)
+                localVariablesCopy.add(cloneLocalVariable(local, labels));
+
+        return new Stamp(copy, tryCatchBlocksCopy, localVariablesCopy, maxLocals);
+    }
+
+    private static TryCatchBlockNode cloneTryCatchBlock(TryCatchBlockNode block, Map<LabelNode, LabelNode> labels) {
+        return new TryCatchBlockNode(labels.get(block.start), labels.get(block.end), labels.get(block.handler), block.type);
+    }
+
+    private static LocalVariableNode cloneLocalVariable(LocalVariableNode local, Map<LabelNode, LabelNode> labels) {
+        return new LocalVariableNode(local.name, local.desc, local.signature, labels.get(local.start), labels.get(local.end), local.index);
+    }
+
+    private static void replaceOwner(InsnList list, String injectOwner, String targetOwner) {
+        String innerPrefix = injectOwner + "$";
+
+        for (AbstractInsnNode insn : list) {
+            if (insn instanceof FieldInsnNode) {
+                FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+
+                if (fieldInsn.owner.equals(injectOwner))
+                    fieldInsn.owner = targetOwner;
+                else if (fieldInsn.owner.startsWith(innerPrefix))
+                    fieldInsn.owner = targetOwner + "$" + fieldInsn.owner.substring(innerPrefix.length());
+            } else if (insn instanceof MethodInsnNode) {
+                MethodInsnNode methodInsn = (MethodInsnNode) insn;
+
+                if (methodInsn.owner.equals(injectOwner))
+                    methodInsn.owner = targetOwner;
+            }
+        }
+    }
+
+    /**
+     * A copy of a template, owned by the method it is applied to.
+     */
+    public static class Stamp {
+
+        private final InsnList instructions;
+        private final List<TryCatchBlockNode> tryCatchBlocks;
+        private final List<LocalVariableNode> localVariables;
+        private final int maxLocals;
+
+        private Stamp(InsnList instructions, List<TryCatchBlockNode> tryCatchBlocks, List<LocalVariableNode> localVariables, int maxLocals) {
+            this.instructions = instructions;
+            this.tryCatchBlocks = tryCatchBlocks;
+            this.localVariables = localVariables;
+            this.maxLocals = maxLocals;
+        }
+
+        public InsnList getInstructions() {
+            return this.instructions;
+        }
+
+        public List<TryCatchBlockNode> getTryCatchBlocks() {
+            return this.tryCatchBlocks;
+        }
+
+        public List<LocalVariableNode> getLocalVariables() {
+            return this.localVariables;
+        }
+
+        /**
+         * @return the number of local slots used by the copy, or by the target with the copy once inserted
+         */
+        public int getMaxLocals() {
+            return this.maxLocals;
+        }
+    }
+}
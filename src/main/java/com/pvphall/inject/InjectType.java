@@ -28,7 +28,47 @@ public enum InjectType {
     REPLACE,
     CREATE,
     INSERT_START,
+    /**
+     * Inserts the injection method before the last return of the target only, earlier returns skip it. A
+     * {@link #PRECISE} injection at {@link com.pvphall.inject.annotations.PreciseType#RETURN} with an ordinal of -1
+     * runs before every return instead.
+     */
     INSERT_END,
+    /**
+     * Inserts the injection method at each location matched by {@link com.pvphall.inject.annotations.Precise}. One
+     * catching exceptions is rejected at a location where an object created by NEW is not initialized yet, such as
+     * in the arguments of a constructor call, since the stack under it could not be kept aside.
+     */
     PRECISE,
+    /**
+     * Calls the injection method at the start of the target, with the same arguments followed by a
+     * {@link com.pvphall.inject.api.callbacks.CallbackInfo}, and returns its result if it cancels the target.
+     */
+    CALLBACK,
+    /**
+     * Replaces the method calls or field accesses matched by {@link com.pvphall.inject.annotations.Precise} with a call to the
+     * injection method, which takes their operands (receiver first) and returns their result. The target is set with
+     * {@link com.pvphall.inject.annotations.Inject#method()}.
+     */
+    REDIRECT,
     ;
+
+    public static final String CALLBACK_INFO = "Lcom/pvphall/inject/api/callbacks/CallbackInfo;";
+
+    /**
+     * @param desc the descriptor of an injection method of this type
+     * @return the descriptor of the method it targets, the same one except for callbacks which have an extra parameter,
+     * or null for redirects which are not related to their target
+     */
+    public String getTargetDesc(String desc) {
+        int end = desc.indexOf(')');
+
+        if (this == REDIRECT)
+            return null;
+
+        if (this == CALLBACK && desc.startsWith(CALLBACK_INFO, end - CALLBACK_INFO.length()))
+            return desc.substring(0, end - CALLBACK_INFO.length()) + desc.substring(end);
+
+        return desc;
+    }
 }
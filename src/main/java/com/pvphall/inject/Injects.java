@@ -26,34 +26,96 @@ package com.pvphall.inject;
 
 import com.google.gson.Gson;
 import com.pvphall.inject.config.Config;
+import com.pvphall.inject.config.Manifest;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Injects {
 
     private static final Injects instance = new Injects();
 
-    private final Map<String, InjectClass> injectClasses = new HashMap<String, InjectClass>();
-    private Config config;
+    // Filled by every thread loading an injection class, read by every thread loading a target
+    private final Map<String, InjectClass> injectClasses = new ConcurrentHashMap<String, InjectClass>();
+    // Only ever replaced as a whole, once a configuration is loaded
+    private volatile Set<String> injectNames = Collections.emptySet();
+    private volatile Config config;
+    private volatile Manifest manifest;
+    private volatile byte[] configHash = new byte[32];
 
     private Injects() {
-        this.config = this.loadConfig();
+        ClassLoader classLoader = this.getClass().getClassLoader();
+        InputStream manifestStream = classLoader.getResourceAsStream(Manifest.RESOURCE);
+
+        // The compile-time manifest is preferred, injects.json is only parsed for projects not using the annotation processor
+        if (manifestStream != null) {
+            this.loadManifest(manifestStream);
+            return;
+        }
+
+        InputStream inputStream = classLoader.getResourceAsStream("injects.json");
+
+        if (inputStream != null)
+            this.loadConfig(inputStream);
+        else
+            System.out.println("Inject - Could not find injects.json");
     }
 
-    private Config loadConfig() {
+    /**
+     * Replaces the current configuration with a manifest generated by {@link com.pvphall.inject.processor.InjectProcessor}.
+     */
+    public void loadManifest(InputStream inputStream) {
         try {
-            InputStream inputStream = this.getClass().getClassLoader().getResourceAsStream("injects.json");
+            byte[] bytes;
+
+            try {
+                bytes = Streams.readFully(inputStream);
+            } finally {
+                inputStream.close();
+            }
+
+            this.manifest = Manifest.read(bytes);
+            this.configHash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            this.setConfig(this.manifest.toConfig());
+        } catch (IOException | NoSuchAlgorithmException e) {
+            System.out.println("Inject - Could not read " + Manifest.RESOURCE);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Replaces the current configuration, e.g. when weaving at build time outside of the game's class loader.
+     */
+    public void loadConfig(InputStream inputStream) {
+        this.manifest = null;
+        this.setConfig(this.readConfig(inputStream));
+    }
+
+    private void setConfig(Config config) {
+        Set<String> injectNames = new HashSet<String>();
+
+        if (config != null && config.getInjects() != null)
+            injectNames.addAll(config.getInjects());
+
+        this.injectNames = Collections.unmodifiableSet(injectNames);
+        this.config = config;
+    }
 
+    private Config readConfig(InputStream inputStream) {
+        try {
             InputStreamReader streamReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
             BufferedReader reader = new BufferedReader(streamReader);
             StringBuilder builder = new StringBuilder();
@@ -61,7 +123,11 @@ public class Injects {
             while ((line = reader.readLine()) != null) {
                 builder.append(line);
             }
-            return new Gson().fromJson(builder.toString(), Config.class);
+
+            String json = builder.toString();
+            this.configHash = this.hash(json);
+
+            return new Gson().fromJson(json, Config.class);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -70,26 +136,55 @@ public class Injects {
         return null;
     }
 
+    private byte[] hash(String content) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+    }
+
     public void addInjectClass(String className, ClassNode node) {
         // Remove the abstract modifier
         node.access = Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER;
 
-        this.injectClasses.put(className, new InjectClass(node.methods));
+        // Injection classes are usually read from their bytes before being loaded, see InjectionsLoader
+        if (!this.injectClasses.containsKey(className))
+            this.injectClasses.putIfAbsent(className, new InjectClass(node));
+    }
+
+    public void addInjectClass(String className, InjectClass injectClass) {
+        this.injectClasses.put(className, injectClass);
     }
 
-    public MethodNode getInjectForClass(String className, String methodName) {
+    public InjectClass getInjectClass(String className) {
+        return this.injectClasses.get(className);
+    }
+
+    public MethodNode getInjectForClass(String className, String methodName, String methodDesc) {
         InjectClass injectClass = this.injectClasses.get(className);
 
         if (injectClass != null)
-            return injectClass.getMethodNode(methodName);
+            return injectClass.getMethodNode(methodName, methodDesc);
 
         return null;
     }
 
+    public boolean isInjectClass(String className) {
+        return this.injectNames.contains(className);
+    }
+
     public Config getConfig() {
         return this.config;
     }
 
+    /**
+     * @return the compile-time manifest, or null if the configuration comes from injects.json
+     */
+    public Manifest getManifest() {
+        return this.manifest;
+    }
+
+    public byte[] getConfigHash() {
+        return this.configHash;
+    }
+
     public static Injects getInstance() {
         return instance;
     }
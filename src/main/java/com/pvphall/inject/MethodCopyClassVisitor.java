@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes a transformed ClassNode, copying the methods which were not modified straight from the
+ * original ClassReader. The writer must be created from the same reader: ASM then copies the bytes of
+ * these methods as is, skipping their instructions and the computation of their frames.
+ *
+ * Methods keep the order they are declared in the original class, the ones added by the transformers come last.
+ */
+public class MethodCopyClassVisitor extends ClassVisitor {
+
+    private final ClassReader reader;
+    private final ClassWriter writer;
+    private final Map<String, MethodNode> methods = new LinkedHashMap<String, MethodNode>();
+    private final Set<String> unmodifiedMethods;
+
+    /**
+     * @param methods the methods of the transformed node
+     * @param unmodifiedMethods name and descriptor, concatenated, of the methods to copy from 'reader'
+     */
+    public MethodCopyClassVisitor(ClassReader reader, ClassWriter writer, List<MethodNode> methods, Set<String> unmodifiedMethods) {
+        super(Opcodes.ASM9, writer);
+
+        this.reader = reader;
+        this.writer = writer;
+        this.unmodifiedMethods = unmodifiedMethods;
+
+        for (MethodNode method : methods)
+            this.methods.put(method.name + method.desc, method);
+    }
+
+    /**
+     * Every method is written once the other members are, see {@link #visitEnd()}.
+     */
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        return null;
+    }
+
+    @Override
+    public void visitEnd() {
+        // The MethodVisitor given back to the reader must be the writer's own one for the copy to happen
+        this.reader.accept(new ClassVisitor(Opcodes.ASM9) {
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                MethodNode method = methods.remove(name + descriptor);
+
+                if (method == null)
+                    return null;
+
+                if (unmodifiedMethods.contains(name + descriptor))
+                    return writer.visitMethod(access, name, descriptor, signature, exceptions);
+
+                method.accept(writer);
+
+                return null;
+            }
+        }, ClassReader.SKIP_CODE);
+
+        // Only the methods added by the transformers are left
+        for (MethodNode method : this.methods.values())
+            method.accept(this.writer);
+
+        super.visitEnd();
+    }
+}
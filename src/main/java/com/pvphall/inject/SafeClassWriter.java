@@ -1,12 +1,16 @@
 package com.pvphall.inject;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 
+import com.pvphall.inject.metrics.ClassMetrics;
+import com.pvphall.inject.metrics.TransformMetrics;
+
 
 
 /**
@@ -18,17 +22,32 @@ import org.objectweb.asm.Opcodes;
 public class SafeClassWriter extends ClassWriter {
 
     private final ClassLoader loader;
+    private final ClassHierarchy hierarchy;
 
     public SafeClassWriter(ClassReader cr, ClassLoader loader, final int flags) {
         super(cr, flags);
         this.loader = loader != null ? loader : ClassLoader.getSystemClassLoader();
+        this.hierarchy = ClassHierarchy.getInstance(this.loader);
     }
 
     @Override
     protected String getCommonSuperClass(final String type1, final String type2) {
+        ClassMetrics metrics = TransformMetrics.current();
+        if (metrics != null) {
+            metrics.addCommonSuperClassCall();
+        }
+        String result = hierarchy.getCommonSuperClass(type1, type2);
+        if (result == null) {
+            result = computeCommonSuperClass(type1, type2);
+            hierarchy.putCommonSuperClass(type1, type2, result);
+        }
+        return result;
+    }
+
+    private String computeCommonSuperClass(final String type1, final String type2) {
         try {
-            ClassReader info1 = typeInfo(type1);
-            ClassReader info2 = typeInfo(type2);
+            ClassInfo info1 = typeInfo(type1);
+            ClassInfo info2 = typeInfo(type2);
             if ((info1.getAccess() & Opcodes.ACC_INTERFACE) != 0) {
                 if (typeImplements(type2, info2, type1)) {
                     return type1;
@@ -43,29 +62,18 @@ public class SafeClassWriter extends ClassWriter {
                     return "java/lang/Object";
                 }
             }
-            StringBuilder b1 = typeAncestors(type1, info1);
-            StringBuilder b2 = typeAncestors(type2, info2);
+            String[] a1 = typeAncestors(type1, info1);
+            String[] a2 = typeAncestors(type2, info2);
             String result = "java/lang/Object";
-            int end1 = b1.length();
-            int end2 = b2.length();
-            while (true) {
-                int start1 = b1.lastIndexOf(";", end1 - 1);
-                int start2 = b2.lastIndexOf(";", end2 - 1);
-                if (start1 != -1 && start2 != -1
-                        && end1 - start1 == end2 - start2) {
-                    String p1 = b1.substring(start1 + 1, end1);
-                    String p2 = b2.substring(start2 + 1, end2);
-                    if (p1.equals(p2)) {
-                        result = p1;
-                        end1 = start1;
-                        end2 = start2;
-                    } else {
-                        return result;
-                    }
-                } else {
-                    return result;
-                }
+            int i1 = a1.length - 1;
+            int i2 = a2.length - 1;
+            // Names are interned, equals() returns on the identity check
+            while (i1 >= 0 && i2 >= 0 && a1[i1].equals(a2[i2])) {
+                result = a1[i1];
+                i1--;
+                i2--;
             }
+            return result;
         } catch (IOException e) {
             throw new RuntimeException(e.toString());
         }
@@ -77,25 +85,32 @@ public class SafeClassWriter extends ClassWriter {
      * @param type
      *            the internal name of a class or interface.
      * @param info
-     *            the ClassReader corresponding to 'type'.
-     * @return a StringBuilder containing the ancestor classes of 'type',
-     *         separated by ';'. The returned string has the following format:
-     *         ";type1;type2 ... ;typeN", where type1 is 'type', and typeN is a
-     *         direct subclass of Object. If 'type' is Object, the returned
-     *         string is empty.
+     *            the ClassInfo corresponding to 'type'.
+     * @return an array containing the ancestor classes of 'type', in the
+     *         following order: "type1, type2 ... typeN", where type1 is 'type',
+     *         and typeN is a direct subclass of Object. If 'type' is Object,
+     *         the returned array is empty. The array is computed once and kept
+     *         in 'info'.
      * @throws IOException
      *             if the bytecode of 'type' or of some of its ancestor class
      *             cannot be loaded.
      */
-    private StringBuilder typeAncestors(String type, ClassReader info)
+    private String[] typeAncestors(String type, ClassInfo info)
             throws IOException {
-        StringBuilder b = new StringBuilder();
+        String[] ancestors = info.getAncestors();
+        if (ancestors != null) {
+            return ancestors;
+        }
+        List<String> list = new ArrayList<String>();
+        ClassInfo current = info;
         while (!"java/lang/Object".equals(type)) {
-            b.append(';').append(type);
-            type = info.getSuperName();
-            info = typeInfo(type);
+            list.add(current.getName());
+            type = current.getSuperName();
+            current = typeInfo(type);
         }
-        return b;
+        ancestors = list.toArray(new String[0]);
+        info.setAncestors(ancestors);
+        return ancestors;
     }
 
     /**
@@ -104,7 +119,7 @@ public class SafeClassWriter extends ClassWriter {
      * @param type
      *            the internal name of a class or interface.
      * @param info
-     *            the ClassReader corresponding to 'type'.
+     *            the ClassInfo corresponding to 'type'.
      * @param itf
      *            the internal name of a interface.
      * @return true if 'type' implements directly or indirectly 'itf'
@@ -112,7 +127,7 @@ public class SafeClassWriter extends ClassWriter {
      *             if the bytecode of 'type' or of some of its ancestor class
      *             cannot be loaded.
      */
-    private boolean typeImplements(String type, ClassReader info, String itf)
+    private boolean typeImplements(String type, ClassInfo info, String itf)
             throws IOException {
         while (!"java/lang/Object".equals(type)) {
             String[] itfs = info.getInterfaces();
@@ -133,24 +148,16 @@ public class SafeClassWriter extends ClassWriter {
     }
 
     /**
-     * Returns a ClassReader corresponding to the given class or interface.
+     * Returns the ClassInfo corresponding to the given class or interface,
+     * from the {@link ClassHierarchy} cache of the loader.
      *
      * @param type
      *            the internal name of a class or interface.
-     * @return the ClassReader corresponding to 'type'.
+     * @return the ClassInfo corresponding to 'type'.
      * @throws IOException
      *             if the bytecode of 'type' cannot be loaded.
      */
-    private ClassReader typeInfo(final String type) throws IOException {
-        String resource = type + ".class";
-        InputStream is = loader.getResourceAsStream(resource);
-        if (is == null) {
-            throw new IOException("Cannot create ClassReader for type " + type);
-        }
-        try {
-            return new ClassReader(is);
-        } finally {
-            is.close();
-        }
+    private ClassInfo typeInfo(final String type) throws IOException {
+        return hierarchy.getInfo(type, loader);
     }
 }
\ No newline at end of file
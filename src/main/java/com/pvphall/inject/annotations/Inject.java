@@ -37,4 +37,10 @@ public @interface Inject {
 
     InjectType type();
     Precise[] precise() default {};
+
+    /**
+     * Name of the target method, optionally followed by its descriptor. Defaults to the name of the injection method,
+     * and is needed by {@link InjectType#REDIRECT} whose descriptor is the one of the redirected instruction.
+     */
+    String method() default "";
 }
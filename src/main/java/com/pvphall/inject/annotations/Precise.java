@@ -34,5 +34,26 @@ import java.lang.annotation.Target;
 public @interface Precise {
 
     PreciseType type();
+
+    /**
+     * Name of the method or field, or value of the constant. Unused for {@link PreciseType#NEW} and {@link PreciseType#RETURN}.
+     */
     String name() default "";
+
+    /**
+     * Class owning the method or field, or created class for {@link PreciseType#NEW}. Any class if empty.
+     */
+    String owner() default "";
+
+    /**
+     * Descriptor of the method, field or constant. Any descriptor if empty.
+     */
+    String desc() default "";
+
+    /**
+     * Index of the matching instruction to inject at, or -1 to inject at every one of them.
+     */
+    int ordinal() default 0;
+
+    PreciseShift shift() default PreciseShift.BEFORE;
 }
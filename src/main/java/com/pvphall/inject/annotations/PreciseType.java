@@ -26,5 +26,10 @@ package com.pvphall.inject.annotations;
 
 public enum PreciseType {
     METHOD,
+    FIELD_GET,
+    FIELD_PUT,
+    NEW,
+    RETURN,
+    CONSTANT,
     ;
 }
@@ -0,0 +1,69 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.api.backends;
+
+import com.pvphall.inject.backends.LaunchWrapperBackend;
+
+/**
+ * Holds the backend the transformers run on. Unless one is set, LaunchWrapper is used when it is on the class path.
+ */
+public class Backends {
+
+    private static final String LAUNCH_CLASS = "net.minecraft.launchwrapper.Launch";
+
+    private static volatile IBackend backend;
+
+    /**
+     * @return the current backend, or null if there is none
+     */
+    public static IBackend getBackend() {
+        IBackend backend = Backends.backend;
+
+        if (backend == null) {
+            synchronized (Backends.class) {
+                if (Backends.backend == null)
+                    Backends.backend = detectBackend();
+
+                backend = Backends.backend;
+            }
+        }
+
+        return backend;
+    }
+
+    public static void setBackend(IBackend backend) {
+        Backends.backend = backend;
+    }
+
+    private static IBackend detectBackend() {
+        try {
+            Class.forName(LAUNCH_CLASS, false, Backends.class.getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+
+        return new LaunchWrapperBackend();
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.api.backends;
+
+/**
+ * Loads the game classes and runs the transformers over them, e.g. LaunchWrapper or a <code>-javaagent</code>.
+ */
+public interface IBackend {
+
+    /**
+     * @return the class loader of the game classes, used to read the injection classes and resolve hierarchies
+     */
+    ClassLoader getClassLoader();
+
+    /**
+     * @param transformedName the binary name of a class, after any remapping
+     * @return the name its class file is found under in {@link #getClassLoader()}
+     */
+    default String untransformName(String transformedName) {
+        return transformedName;
+    }
+
+    /**
+     * Registers the detection and injection transformers, in that order.
+     */
+    void registerTransformers();
+}
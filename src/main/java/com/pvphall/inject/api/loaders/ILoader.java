@@ -24,10 +24,22 @@
 
 package com.pvphall.inject.api.loaders;
 
-import com.pvphall.inject.annotations.Injectable;
-import org.objectweb.asm.tree.ClassNode;
+import com.pvphall.inject.InjectClass;
+import com.pvphall.inject.api.transformers.TransformContext;
+import org.objectweb.asm.ClassVisitor;
 
 public interface ILoader {
 
-    void transform(ClassNode node, Class<? extends Injectable> injectable);
+    void transform(TransformContext context, InjectClass injectClass);
+
+    /**
+     * Streaming variant of {@link #transform(TransformContext, InjectClass)}, applied while the class is read.
+     * Methods which are not changed should be passed down to <code>next</code> as is, so their bytes are copied.
+     *
+     * @param next the visitor the returned one delegates to
+     * @return a visitor applying the injection class, or null if this loader needs the whole class tree
+     */
+    default ClassVisitor visitor(ClassVisitor next, TransformContext context, InjectClass injectClass) {
+        return null;
+    }
 }
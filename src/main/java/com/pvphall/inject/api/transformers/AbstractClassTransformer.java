@@ -24,36 +24,450 @@
 
 package com.pvphall.inject.api.transformers;
 
+import com.pvphall.inject.MethodCopyClassVisitor;
 import com.pvphall.inject.SafeClassWriter;
-import net.minecraft.launchwrapper.IClassTransformer;
-import net.minecraft.launchwrapper.Launch;
+import com.pvphall.inject.Streams;
+import com.pvphall.inject.api.backends.Backends;
+import com.pvphall.inject.api.backends.IBackend;
+import com.pvphall.inject.cache.TransformCache;
+import com.pvphall.inject.jfr.InjectEvents;
+import com.pvphall.inject.metrics.ClassMetrics;
+import com.pvphall.inject.metrics.TransformMetrics;
+import com.pvphall.inject.verify.ClassVerifier;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
-public abstract class AbstractClassTransformer implements IClassTransformer {
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
-    @Override
+/**
+ * Base of the transformers, independent of the backend loading the classes. LaunchWrapper transformers
+ * only have to implement its <code>IClassTransformer</code>, which {@link #transform(String, String, byte[])} matches.
+ * Transformers still implementing <code>transform(ClassNode, String)</code> extend {@link ClassNodeTransformer} instead.
+ */
+public abstract class AbstractClassTransformer {
+
+    private final AtomicLong skippedClasses = new AtomicLong();
+    private final AtomicLong transformedClasses = new AtomicLong();
+    private final AtomicLong cachedClasses = new AtomicLong();
+    private final AtomicLong preTransformedClasses = new AtomicLong();
+    private final Map<String, CompletableFuture<byte[][]>> preTransformed = new ConcurrentHashMap<String, CompletableFuture<byte[][]>>();
+
+    /**
+     * @param name the name of the class as loaded
+     * @param transformedName the binary name of the class, after any remapping
+     * @return the transformed bytes, or the given ones if the class is left as is
+     */
     public byte[] transform(String name, String transformedName, byte[] bytes) {
+        return this.transform(name, transformedName, bytes, null);
+    }
+
+    /**
+     * @param loader the class loader defining the class, which its hierarchy is read from, or null for {@link #getClassLoader()}
+     * @see #transform(String, String, byte[])
+     */
+    public byte[] transform(String name, String transformedName, byte[] bytes, ClassLoader loader) {
         if (bytes == null)
             return null;
 
+        CompletableFuture<byte[][]> future = this.preTransformed.remove(transformedName);
+
+        // A worker still on this class may be waiting for the class loading lock held by this thread, it is never waited for
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            byte[][] result = future.join();
+
+            // Another transformer may have changed the bytes before this one, or another loader defines the class, the pre-transformed result is then stale
+            if (result != null && (loader == null || loader == this.getClassLoader()) && Arrays.equals(result[0], bytes)) {
+                this.preTransformedClasses.incrementAndGet();
+                return result[1];
+            }
+        }
+
+        return this.transformBytes(transformedName, bytes, loader);
+    }
+
+    /**
+     * Reads and transforms the given classes in parallel, ahead of them being loaded. Their results are
+     * then given back by {@link #transform(String, String, byte[])} as long as the class bytes did not change.
+     * The workers may have to load classes, so the returned future must not be waited for during class loading.
+     *
+     * Classes are transformed on the calling thread until one is found, which must not hold any class loading lock.
+     * This initializes the classes any transform uses: a worker initializing them, and loading others to do so, while
+     * a thread loading a class waits for them would deadlock.
+     *
+     * @param classNames the transformed names of the classes
+     * @param parallelism the number of worker threads to use
+     * @return a future completed once every class went through the transformer
+     */
+    public CompletableFuture<Void> preTransform(Collection<String> classNames, int parallelism) {
+        List<String> remainingClasses = new ArrayList<String>(classNames);
+
+        while (!remainingClasses.isEmpty()) {
+            String className = remainingClasses.remove(0);
+            byte[][] result = this.preTransform(className);
+
+            if (result == null)
+                continue;
+
+            if (result[1] != result[0])
+                this.preTransformed.put(className, CompletableFuture.completedFuture(result));
+
+            break;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<CompletableFuture<byte[][]>> futures = new ArrayList<CompletableFuture<byte[][]>>();
+
+        for (String className : remainingClasses) {
+            CompletableFuture<byte[][]> future = CompletableFuture.supplyAsync(() -> this.preTransform(className), pool);
+
+            this.preTransformed.put(className, future);
+            futures.add(future);
+
+            // Only results worth handing back are kept until the class is loaded, which takes them out
+            future.whenComplete((result, throwable) -> {
+                if (result == null || result[1] == result[0])
+                    this.preTransformed.remove(className, future);
+            });
+        }
+
+        return CompletableFuture
+                .allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((result, throwable) -> pool.shutdown());
+    }
+
+    private byte[][] preTransform(String className) {
+        IBackend backend = Backends.getBackend();
+        String resource = (backend != null ? backend.untransformName(className) : className).replace(".", "/") + ".class";
+        ClassLoader classLoader = this.getClassLoader() != null ? this.getClassLoader() : ClassLoader.getSystemClassLoader();
+
+        try (InputStream inputStream = classLoader.getResourceAsStream(resource)) {
+            if (inputStream == null)
+                return null;
+
+            byte[] bytes = Streams.readFully(inputStream);
+
+            return new byte[][] { bytes, this.transformBytes(className, bytes, null) };
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Inject - Could not pre-transform " + className);
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    private byte[] transformBytes(String transformedName, byte[] bytes, ClassLoader loader) {
+        // Classes without any registered injection are handed back untouched, without any ASM work
+        if (!this.shouldTransform(transformedName)) {
+            this.skippedClasses.incrementAndGet();
+            return bytes;
+        }
+
+        // Only resolved for the classes transformed, the backend may itself be loaded through this transformer
+        if (loader == null)
+            loader = this.getClassLoader();
+
+        TransformCache cache = this.getCache();
+        byte[] key = null;
+
+        if (cache != null) {
+            key = cache.key(bytes, this.getCacheSalt(transformedName));
+            byte[] cached = cache.get(key);
+
+            if (cached != null) {
+                this.cachedClasses.incrementAndGet();
+                return cached;
+            }
+        }
+
+        TransformMetrics metrics = this.isMeasured() ? TransformMetrics.getInstance() : null;
+        Object event = this.isMeasured() ? InjectEvents.beginTransform() : null;
+
+        if (metrics == null && event == null)
+            return this.transformBytes(transformedName, bytes, loader, cache, key, null);
+
+        // A recording alone still needs the time of each stage, the class metrics are then not kept
+        ClassMetrics classMetrics = metrics != null ? metrics.begin(transformedName, loader) : new ClassMetrics(transformedName, loader);
+        byte[] transformed = null;
+
+        try {
+            transformed = this.transformBytes(transformedName, bytes, loader, cache, key, classMetrics);
+
+            return transformed;
+        } finally {
+            if (metrics != null)
+                metrics.end(classMetrics);
+
+            if (event != null)
+                InjectEvents.commitTransform(event, this.getClass().getName(), classMetrics, bytes.length, transformed);
+        }
+    }
+
+    private byte[] transformBytes(String transformedName, byte[] bytes, ClassLoader loader, TransformCache cache, byte[] key, ClassMetrics classMetrics) {
+        long start = System.nanoTime();
+
         ClassReader reader = new ClassReader(bytes);
+
+        if (this.isStreaming()) {
+            byte[] streamed = this.stream(transformedName, bytes, reader, loader, cache, key, classMetrics);
+
+            if (streamed != null)
+                return streamed;
+        }
+
         ClassNode node = new ClassNode();
-        reader.accept(node, ClassReader.EXPAND_FRAMES);
+        // Frames of modified methods are computed again by the writer, the original ones are never needed
+        reader.accept(node, ClassReader.SKIP_FRAMES);
+
+        List<MethodNode> originalMethods = new ArrayList<MethodNode>(node.methods);
+        TransformContext context = new TransformContext(transformedName, node, loader);
+
+        if (classMetrics != null)
+            classMetrics.addParseNanos(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        this.transform(context);
+
+        if (classMetrics != null)
+            classMetrics.addWeaveNanos(System.nanoTime() - start);
+
+        if (!context.isModified()) {
+            this.skippedClasses.incrementAndGet();
+
+            if (cache != null)
+                cache.put(key, bytes);
+
+            return bytes;
+        }
+
+        this.transformedClasses.incrementAndGet();
+
+        start = System.nanoTime();
+        ClassWriter writer = new SafeClassWriter(reader, loader, ClassWriter.COMPUTE_FRAMES);
+
+        try {
+            node.accept(new MethodCopyClassVisitor(reader, writer, node.methods, this.getUnmodifiedMethods(context, originalMethods)));
+        } catch (Throwable t) {
+            t.printStackTrace();
+
+            if (classMetrics != null)
+                classMetrics.setFailed();
+
+            // Whatever the writer holds may be missing methods or frames, it would only fail later with a VerifyError
+            return bytes;
+        }
+
+        byte[] transformed = writer.toByteArray();
+
+        if (classMetrics != null)
+            classMetrics.addWriteNanos(System.nanoTime() - start);
 
-        this.transform(node, transformedName);
+        return this.verify(transformedName, bytes, transformed, loader, classMetrics, cache, key);
+    }
+
+    /**
+     * Weaves the class in a single pass from the reader to the writer, without reading it into a tree.
+     *
+     * @return the woven bytes, or null if the transformer has no visitor for this class
+     */
+    private byte[] stream(String transformedName, byte[] bytes, ClassReader reader, ClassLoader loader, TransformCache cache, byte[] key, ClassMetrics classMetrics) {
+        long start = System.nanoTime();
 
-        ClassWriter writer = new SafeClassWriter(reader, Launch.classLoader, ClassWriter.COMPUTE_FRAMES);
+        TransformContext context = new TransformContext(transformedName, this.readHeader(reader), loader);
+        ClassWriter writer = new SafeClassWriter(reader, loader, ClassWriter.COMPUTE_FRAMES);
+        ClassVisitor visitor = this.visitor(writer, context);
+
+        if (visitor == null)
+            return null;
 
         try {
-            node.accept(writer);
+            // Methods the visitor hands straight to the writer are copied from the original bytes, frames included
+            reader.accept(visitor, ClassReader.SKIP_FRAMES);
         } catch (Throwable t) {
             t.printStackTrace();
+
+            if (classMetrics != null)
+                classMetrics.setFailed();
+
+            // The class is only partly written, unlike with the tree there is nothing to salvage
+            return bytes;
+        }
+
+        if (classMetrics != null)
+            classMetrics.addWeaveNanos(System.nanoTime() - start);
+
+        if (!context.isModified()) {
+            this.skippedClasses.incrementAndGet();
+
+            if (cache != null)
+                cache.put(key, bytes);
+
+            return bytes;
         }
 
-        return writer.toByteArray();
+        this.transformedClasses.incrementAndGet();
+
+        start = System.nanoTime();
+        byte[] transformed = writer.toByteArray();
+
+        if (classMetrics != null)
+            classMetrics.addWriteNanos(System.nanoTime() - start);
+
+        return this.verify(transformedName, bytes, transformed, loader, classMetrics, cache, key);
+    }
+
+    /**
+     * Caches the woven bytes, unless they fail the verification, even once they were handed back.
+     *
+     * @return the woven bytes, or the original ones if the woven class failed a synchronous verification
+     */
+    private byte[] verify(String transformedName, byte[] bytes, byte[] transformed, ClassLoader loader, ClassMetrics classMetrics, TransformCache cache, byte[] key) {
+        ClassVerifier verifier = this.getVerifier();
+
+        if (cache != null)
+            cache.put(key, transformed);
+
+        if (verifier == null)
+            return transformed;
+
+        byte[] verified = verifier.verify(transformedName, bytes, transformed, loader, () -> {
+            if (cache != null)
+                cache.remove(key);
+        });
+
+        if (verified != transformed && classMetrics != null)
+            classMetrics.setFailed();
+
+        return verified;
     }
 
-    public abstract void transform(ClassNode node, String className);
+    private ClassNode readHeader(ClassReader reader) {
+        ClassNode node = new ClassNode();
+        node.access = reader.getAccess();
+        node.name = reader.getClassName();
+        node.superName = reader.getSuperName();
+        node.interfaces.addAll(Arrays.asList(reader.getInterfaces()));
+
+        return node;
+    }
+
+    private Set<String> getUnmodifiedMethods(TransformContext context, List<MethodNode> originalMethods) {
+        Set<MethodNode> currentMethods = Collections.newSetFromMap(new IdentityHashMap<MethodNode, Boolean>());
+        currentMethods.addAll(context.getNode().methods);
+
+        Set<String> unmodifiedMethods = new HashSet<String>();
+
+        for (MethodNode method : originalMethods)
+            if (currentMethods.contains(method) && !context.isModified(method))
+                unmodifiedMethods.add(method.name + method.desc);
+
+        return unmodifiedMethods;
+    }
+
+    /**
+     * Pre-filter called before any parsing happens. Returning false makes
+     * {@link #transform(String, String, byte[])} return the original bytes as is.
+     *
+     * @param className the transformed name of the class being loaded
+     * @return true if the class needs to go through {@link #transform(TransformContext)}
+     */
+    public boolean shouldTransform(String className) {
+        return true;
+    }
+
+    /**
+     * Transforms the class held by the context, reporting every change with
+     * {@link TransformContext#markModified()} or {@link TransformContext#markModified(MethodNode)}.
+     * Classes without any reported change are given back as is.
+     */
+    public abstract void transform(TransformContext context);
+
+    /**
+     * @return true to weave classes with {@link #visitor(ClassVisitor, TransformContext)} rather than through a class tree
+     */
+    protected boolean isStreaming() {
+        return false;
+    }
+
+    /**
+     * Streaming variant of {@link #transform(TransformContext)}, called when {@link #isStreaming()} is true.
+     * The node of the context only holds the header of the class, along with the methods added to it.
+     *
+     * @param next the visitor writing the class, which the returned one must delegate to
+     * @return a visitor transforming the class while it is read, or null to transform it through its tree
+     */
+    protected ClassVisitor visitor(ClassVisitor next, TransformContext context) {
+        return null;
+    }
+
+    /**
+     * @return the class loader used to resolve the hierarchy of the classes being written when the caller does not
+     * give the one defining them, the one of the backend by default
+     */
+    protected ClassLoader getClassLoader() {
+        IBackend backend = Backends.getBackend();
+
+        return backend != null ? backend.getClassLoader() : null;
+    }
+
+    /**
+     * @return the persistent cache consulted before transforming, or null to always transform
+     */
+    protected TransformCache getCache() {
+        return null;
+    }
+
+    /**
+     * @return false to neither record the metrics nor the Flight Recorder events of the transforms
+     */
+    protected boolean isMeasured() {
+        return true;
+    }
+
+    /**
+     * @return the verifier of the woven classes, or null to hand them back unchecked
+     */
+    protected ClassVerifier getVerifier() {
+        return ClassVerifier.getInstance();
+    }
+
+    /**
+     * @param className the transformed name of the class being loaded
+     * @return extra bytes mixed into the cache key of the class, in addition to its original bytes
+     */
+    protected byte[] getCacheSalt(String className) {
+        return null;
+    }
+
+    public long getSkippedClasses() {
+        return this.skippedClasses.get();
+    }
+
+    public long getTransformedClasses() {
+        return this.transformedClasses.get();
+    }
+
+    public long getCachedClasses() {
+        return this.cachedClasses.get();
+    }
+
+    public long getPreTransformedClasses() {
+        return this.preTransformedClasses.get();
+    }
 }
@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.api.transformers;
+
+import com.pvphall.inject.annotations.PreciseType;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Instructions of a method grouped by {@link PreciseType} and key, in their order in the method.
+ * The key is the name of the called method or accessed field, the value of a constant, or empty for NEW and returns.
+ *
+ * Built once per method and transform, instructions inserted after that are not part of it,
+ * so an injection never matches the code inserted by another one.
+ */
+public class InstructionIndex {
+
+    private static final PreciseType[] TYPES = PreciseType.values();
+
+    // Grouping by key is only done for the keys looked up, most instructions of a large method never are
+    private final List<AbstractInsnNode>[] instructions;
+    private final Map<PreciseType, Map<String, List<AbstractInsnNode>>> instructionsByKey = new EnumMap<PreciseType, Map<String, List<AbstractInsnNode>>>(PreciseType.class);
+
+    @SuppressWarnings("unchecked")
+    public InstructionIndex(InsnList instructions) {
+        this.instructions = new List[TYPES.length];
+
+        for (int i = 0; i < TYPES.length; i++)
+            this.instructions[i] = new ArrayList<AbstractInsnNode>();
+
+        for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            PreciseType type = getType(insn);
+
+            if (type != null)
+                this.instructions[type.ordinal()].add(insn);
+        }
+    }
+
+    /**
+     * @return the instructions of the given type and key, in their order in the method
+     */
+    public List<AbstractInsnNode> get(PreciseType type, String key) {
+        List<AbstractInsnNode> instructions = this.instructions[type.ordinal()];
+
+        if (type == PreciseType.NEW || type == PreciseType.RETURN)
+            return Collections.unmodifiableList(instructions);
+
+        return this.instructionsByKey.computeIfAbsent(type, k -> new HashMap<String, List<AbstractInsnNode>>()).computeIfAbsent(key, k -> {
+            List<AbstractInsnNode> found = new ArrayList<AbstractInsnNode>();
+
+            for (AbstractInsnNode insn : instructions)
+                if (getKey(type, insn).equals(k))
+                    found.add(insn);
+
+            return found;
+        });
+    }
+
+    /**
+     * Removes an instruction taken out of the method, so that no other injection finds it.
+     */
+    public void remove(AbstractInsnNode insn) {
+        PreciseType type = getType(insn);
+
+        if (type == null)
+            return;
+
+        this.instructions[type.ordinal()].remove(insn);
+
+        Map<String, List<AbstractInsnNode>> byKey = this.instructionsByKey.get(type);
+        List<AbstractInsnNode> found = byKey != null ? byKey.get(getKey(type, insn)) : null;
+
+        if (found != null)
+            found.remove(insn);
+    }
+
+    /**
+     * @return the kind of location the instruction is, or null if it cannot be targeted
+     */
+    public static PreciseType getType(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+
+        switch (insn.getType()) {
+            case AbstractInsnNode.METHOD_INSN:
+                return PreciseType.METHOD;
+            case AbstractInsnNode.FIELD_INSN:
+                return opcode == Opcodes.GETFIELD || opcode == Opcodes.GETSTATIC ? PreciseType.FIELD_GET : PreciseType.FIELD_PUT;
+            case AbstractInsnNode.TYPE_INSN:
+                return opcode == Opcodes.NEW ? PreciseType.NEW : null;
+            case AbstractInsnNode.LDC_INSN:
+                return PreciseType.CONSTANT;
+            case AbstractInsnNode.INT_INSN:
+                return opcode != Opcodes.NEWARRAY ? PreciseType.CONSTANT : null;
+            case AbstractInsnNode.INSN:
+                if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN)
+                    return PreciseType.RETURN;
+
+                return opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.DCONST_1 ? PreciseType.CONSTANT : null;
+            default:
+                return null;
+        }
+    }
+
+    private static String getKey(PreciseType type, AbstractInsnNode insn) {
+        switch (type) {
+            case METHOD:
+                return ((MethodInsnNode) insn).name;
+            case FIELD_GET:
+            case FIELD_PUT:
+                return ((FieldInsnNode) insn).name;
+            case CONSTANT:
+                return String.valueOf(getConstant(insn));
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * @return the value pushed by a constant instruction, or null if it is not one. A class constant is returned as its {@link Type}.
+     */
+    public static Object getConstant(AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+
+        if (insn instanceof LdcInsnNode)
+            return ((LdcInsnNode) insn).cst;
+
+        if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5)
+            return opcode - Opcodes.ICONST_0;
+
+        if (opcode == Opcodes.LCONST_0 || opcode == Opcodes.LCONST_1)
+            return (long) (opcode - Opcodes.LCONST_0);
+
+        if (opcode >= Opcodes.FCONST_0 && opcode <= Opcodes.FCONST_2)
+            return (float) (opcode - Opcodes.FCONST_0);
+
+        if (opcode == Opcodes.DCONST_0 || opcode == Opcodes.DCONST_1)
+            return (double) (opcode - Opcodes.DCONST_0);
+
+        if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH)
+            return ((IntInsnNode) insn).operand;
+
+        return null;
+    }
+
+    /**
+     * @return the type pushed by a constant instruction
+     */
+    public static Type getConstantType(AbstractInsnNode insn) {
+        Object constant = getConstant(insn);
+
+        if (constant instanceof Integer)
+            return Type.INT_TYPE;
+
+        if (constant instanceof Long)
+            return Type.LONG_TYPE;
+
+        if (constant instanceof Float)
+            return Type.FLOAT_TYPE;
+
+        if (constant instanceof Double)
+            return Type.DOUBLE_TYPE;
+
+        if (constant instanceof Type)
+            return ((Type) constant).getSort() == Type.METHOD ? Type.getType("Ljava/lang/invoke/MethodType;") : Type.getType(Class.class);
+
+        if (constant instanceof Handle)
+            return Type.getType("Ljava/lang/invoke/MethodHandle;");
+
+        if (constant instanceof ConstantDynamic)
+            return Type.getType(((ConstantDynamic) constant).getDescriptor());
+
+        return Type.getType(String.class);
+    }
+}
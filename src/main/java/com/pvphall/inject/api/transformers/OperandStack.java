@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.api.transformers;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicInterpreter;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.Interpreter;
+
+/**
+ * Types on the operand stack of a method at one of its instructions, found by analyzing the whole method.
+ * References are all typed as <code>java/lang/Object</code>, which is enough to keep them in locals.
+ */
+public class OperandStack {
+
+    private OperandStack() {
+    }
+
+    /**
+     * @param owner the internal name of the class of the method
+     * @param after whether to give the stack right after the instruction instead of before it
+     * @return the types on the stack from the bottom up, or null if an object created by NEW and not initialized yet
+     * is on it, which cannot be stored in a local
+     */
+    public static Type[] at(String owner, MethodNode method, AbstractInsnNode location, boolean after) throws AnalyzerException {
+        StackInterpreter interpreter = new StackInterpreter();
+        Frame<BasicValue> frame = analyze(owner, method, interpreter)[method.instructions.indexOf(location)];
+
+        // Unreachable code, which the writer replaces anyway
+        if (frame == null)
+            return new Type[0];
+
+        if (after) {
+            frame = new StackFrame(frame);
+            frame.execute(location, interpreter);
+        }
+
+        Type[] stack = new Type[frame.getStackSize()];
+
+        for (int i = 0; i < stack.length; i++) {
+            BasicValue value = frame.getStack(i);
+
+            if (value instanceof UninitializedValue)
+                return null;
+
+            stack[i] = value.getType();
+        }
+
+        return stack;
+    }
+
+    private static Frame<BasicValue>[] analyze(String owner, MethodNode method, StackInterpreter interpreter) throws AnalyzerException {
+        Analyzer<BasicValue> analyzer = new Analyzer<BasicValue>(interpreter) {
+
+            @Override
+            protected Frame<BasicValue> newFrame(int numLocals, int numStack) {
+                return new StackFrame(numLocals, numStack);
+            }
+
+            @Override
+            protected Frame<BasicValue> newFrame(Frame<? extends BasicValue> frame) {
+                return new StackFrame(frame);
+            }
+        };
+
+        int maxStack = method.maxStack;
+
+        // Code inserted earlier in this transform may not have updated the maximum stack size, which the writer computes
+        try {
+            while (true) {
+                try {
+                    return analyzer.analyze(owner, method);
+                } catch (AnalyzerException e) {
+                    if (!(e.getCause() instanceof IndexOutOfBoundsException) || method.maxStack > Short.MAX_VALUE)
+                        throw e;
+
+                    method.maxStack = Math.max(16, method.maxStack * 2);
+                }
+            }
+        } finally {
+            method.maxStack = maxStack;
+        }
+    }
+
+    /**
+     * An object created by NEW, until its constructor is called.
+     */
+    private static class UninitializedValue extends BasicValue {
+
+        private UninitializedValue(Type type) {
+            super(type);
+        }
+
+        // Two objects created by different instructions are never merged into one
+        @Override
+        public boolean equals(Object value) {
+            return value == this;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+
+    private static class StackInterpreter extends BasicInterpreter {
+
+        private StackInterpreter() {
+            super(Opcodes.ASM9);
+        }
+
+        @Override
+        public BasicValue newOperation(AbstractInsnNode insn) throws AnalyzerException {
+            if (insn.getOpcode() == Opcodes.NEW)
+                return new UninitializedValue(Type.getObjectType(((TypeInsnNode) insn).desc));
+
+            return super.newOperation(insn);
+        }
+    }
+
+    private static class StackFrame extends Frame<BasicValue> {
+
+        private StackFrame(int numLocals, int numStack) {
+            super(numLocals, numStack);
+        }
+
+        private StackFrame(Frame<? extends BasicValue> frame) {
+            super(frame);
+        }
+
+        @Override
+        public void execute(AbstractInsnNode insn, Interpreter<BasicValue> interpreter) throws AnalyzerException {
+            BasicValue receiver = null;
+
+            if (insn.getOpcode() == Opcodes.INVOKESPECIAL && ((MethodInsnNode) insn).name.equals("<init>"))
+                receiver = this.getStack(this.getStackSize() - Type.getArgumentTypes(((MethodInsnNode) insn).desc).length - 1);
+
+            super.execute(insn, interpreter);
+
+            if (!(receiver instanceof UninitializedValue))
+                return;
+
+            // Every copy of the object, e.g. made by DUP, is initialized by the constructor call
+            for (int i = 0; i < this.getStackSize(); i++)
+                if (this.getStack(i) == receiver)
+                    this.setStack(i, BasicValue.REFERENCE_VALUE);
+
+            for (int i = 0; i < this.getLocals(); i++)
+                if (this.getLocal(i) == receiver)
+                    this.setLocal(i, BasicValue.REFERENCE_VALUE);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.api.transformers;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * State of a single class going through an {@link AbstractClassTransformer}.
+ *
+ * Transformers report what they changed: methods which are not marked as modified
+ * are copied as is from the original bytes, without computing their frames again.
+ */
+public class TransformContext {
+
+    private final String className;
+    private final ClassNode node;
+    private final ClassLoader classLoader;
+    private final Set<MethodNode> modifiedMethods = Collections.newSetFromMap(new IdentityHashMap<MethodNode, Boolean>());
+    private final Map<MethodNode, InstructionIndex> instructions = new IdentityHashMap<MethodNode, InstructionIndex>();
+    private Map<String, MethodNode> methods;
+    private boolean modified;
+
+    public TransformContext(String className, ClassNode node, ClassLoader classLoader) {
+        this.className = className;
+        this.node = node;
+        this.classLoader = classLoader;
+    }
+
+    /**
+     * Marks the class itself as modified, e.g. its access, interfaces or list of methods.
+     */
+    public void markModified() {
+        this.modified = true;
+    }
+
+    /**
+     * Marks the instructions of an existing method as modified.
+     */
+    public void markModified(MethodNode method) {
+        this.modifiedMethods.add(method);
+        this.modified = true;
+    }
+
+    /**
+     * @return the method of the class with the given name and descriptor, looked up in an index built once per transform
+     */
+    public MethodNode getMethod(String name, String desc) {
+        if (this.methods == null) {
+            this.methods = new HashMap<String, MethodNode>();
+
+            for (MethodNode method : this.node.methods)
+                this.methods.put(method.name + method.desc, method);
+        }
+
+        return this.methods.get(name + desc);
+    }
+
+    /**
+     * @return the index of the instructions of the method, as they were before any of them was inserted during this transform
+     */
+    public InstructionIndex getInstructions(MethodNode method) {
+        return this.instructions.computeIfAbsent(method, key -> new InstructionIndex(key.instructions));
+    }
+
+    /**
+     * Indexes the instructions of the method if they are not yet, loaders call it before inserting code in a method.
+     */
+    public void indexInstructions(MethodNode method) {
+        this.getInstructions(method);
+    }
+
+    public void addMethod(MethodNode method) {
+        this.node.methods.add(method);
+
+        if (this.methods != null)
+            this.methods.put(method.name + method.desc, method);
+
+        this.markModified();
+    }
+
+    public void removeMethod(MethodNode method) {
+        this.node.methods.remove(method);
+
+        if (this.methods != null)
+            this.methods.remove(method.name + method.desc, method);
+
+        this.markModified();
+    }
+
+    public boolean isModified() {
+        return this.modified;
+    }
+
+    public boolean isModified(MethodNode method) {
+        return this.modifiedMethods.contains(method);
+    }
+
+    public String getClassName() {
+        return this.className;
+    }
+
+    public ClassNode getNode() {
+        return this.node;
+    }
+
+    /**
+     * @return the class loader defining the class, or null if it is not known
+     */
+    public ClassLoader getClassLoader() {
+        return this.classLoader;
+    }
+}
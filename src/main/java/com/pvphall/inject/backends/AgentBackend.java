@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.backends;
+
+import com.pvphall.inject.api.backends.IBackend;
+import com.pvphall.inject.api.transformers.AbstractClassTransformer;
+import com.pvphall.inject.transformers.DetectInjectTransformer;
+import com.pvphall.inject.transformers.InjectTransformer;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.security.ProtectionDomain;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs the transformers from a <code>java.lang.instrument</code> agent, on the classes of any loader,
+ * without LaunchWrapper on the class path.
+ */
+public class AgentBackend implements IBackend, ClassFileTransformer {
+
+    private final Instrumentation instrumentation;
+    private final List<AbstractClassTransformer> transformers;
+    // Classes loaded by the transformers themselves are left as is, they would otherwise be woven while weaving
+    private final ThreadLocal<Boolean> transforming = new ThreadLocal<Boolean>();
+
+    public AgentBackend(Instrumentation instrumentation) {
+        this(instrumentation, new CopyOnWriteArrayList<AbstractClassTransformer>());
+    }
+
+    AgentBackend(Instrumentation instrumentation, List<AbstractClassTransformer> transformers) {
+        this.instrumentation = instrumentation;
+        this.transformers = transformers;
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return ClassLoader.getSystemClassLoader();
+    }
+
+    @Override
+    public void registerTransformers() {
+        this.transformers.add(new DetectInjectTransformer());
+        this.transformers.add(new InjectTransformer());
+        this.instrumentation.addTransformer(this);
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined, ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        // Redefined classes were already woven when first loaded, and classes of the JDK are never targets
+        if (className == null || classBeingRedefined != null || loader == null || this.isPlatformClass(className) || this.transforming.get() != null)
+            return null;
+
+        String name = className.replace('/', '.');
+        byte[] bytes = classfileBuffer;
+        this.transforming.set(Boolean.TRUE);
+
+        try {
+            for (AbstractClassTransformer transformer : this.transformers)
+                bytes = transformer.transform(name, name, bytes, loader);
+        } finally {
+            this.transforming.remove();
+        }
+
+        // Null tells the JVM the class is left as is
+        return bytes != classfileBuffer ? bytes : null;
+    }
+
+    private boolean isPlatformClass(String className) {
+        return className.startsWith("java/") || className.startsWith("jdk/") || className.startsWith("sun/");
+    }
+}
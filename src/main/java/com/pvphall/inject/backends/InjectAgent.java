@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.backends;
+
+import com.pvphall.inject.api.backends.Backends;
+import com.pvphall.inject.reload.HotReload;
+
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Entry point of the jar of Inject used as an agent, with comma separated options:
+ * <ul>
+ *     <li><code>weave</code>, the default, weaves the injections through an {@link AgentBackend}</li>
+ *     <li><code>reload=&lt;classes directory&gt;</code> reloads injection classes while the game runs, see {@link HotReload}.
+ *     The directory defaults to the <code>inject.reload.dir</code> property, then to <code>target/classes</code></li>
+ * </ul>
+ */
+public class InjectAgent {
+
+    public static void premain(String args, Instrumentation instrumentation) {
+        agentmain(args, instrumentation);
+    }
+
+    public static void agentmain(String args, Instrumentation instrumentation) {
+        boolean weave = args == null || args.isEmpty();
+        String reload = null;
+
+        for (String option : weave ? new String[0] : args.split(",")) {
+            if (option.equals("weave"))
+                weave = true;
+            else if (option.equals("reload"))
+                reload = System.getProperty("inject.reload.dir", "target/classes");
+            else if (option.startsWith("reload="))
+                reload = option.substring("reload=".length());
+            else
+                System.out.println("Inject - Unknown agent option " + option);
+        }
+
+        // Hot reload records the classes before they are woven, its transformers come first
+        if (reload != null)
+            reload(instrumentation, reload, weave);
+
+        if (weave)
+            weave(instrumentation);
+    }
+
+    private static void weave(Instrumentation instrumentation) {
+        AgentBackend backend = new AgentBackend(instrumentation);
+
+        Backends.setBackend(backend);
+        backend.registerTransformers();
+    }
+
+    private static void reload(Instrumentation instrumentation, String path, boolean weave) {
+        Path directory = Paths.get(path);
+
+        if (!instrumentation.isRetransformClassesSupported()) {
+            System.out.println("Inject - Hot reload disabled, the JVM cannot retransform classes");
+            return;
+        }
+
+        if (!Files.isDirectory(directory)) {
+            System.out.println("Inject - Hot reload disabled, " + directory.toAbsolutePath() + " is not a directory");
+            return;
+        }
+
+        new HotReload(instrumentation, directory, weave).start();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.backends;
+
+import com.pvphall.inject.api.backends.IBackend;
+import com.pvphall.inject.transformers.DetectInjectClassTransformer;
+import com.pvphall.inject.transformers.InjectClassTransformer;
+import net.minecraft.launchwrapper.IClassNameTransformer;
+import net.minecraft.launchwrapper.IClassTransformer;
+import net.minecraft.launchwrapper.Launch;
+
+/**
+ * Runs the transformers as LaunchWrapper ones, in its <code>LaunchClassLoader</code>.
+ */
+public class LaunchWrapperBackend implements IBackend {
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return Launch.classLoader;
+    }
+
+    /**
+     * Class files are found under their obfuscated names, which the name transformer of the launch maps back.
+     */
+    @Override
+    public String untransformName(String transformedName) {
+        if (Launch.classLoader == null)
+            return transformedName;
+
+        for (IClassTransformer transformer : Launch.classLoader.getTransformers())
+            if (transformer instanceof IClassNameTransformer)
+                return ((IClassNameTransformer) transformer).unmapClassName(transformedName);
+
+        return transformedName;
+    }
+
+    @Override
+    public void registerTransformers() {
+        Launch.classLoader.registerTransformer(DetectInjectClassTransformer.class.getName());
+        Launch.classLoader.registerTransformer(InjectClassTransformer.class.getName());
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.cache;
+
+import com.pvphall.inject.Injects;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.BufferedOutputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * Persistent cache of transformed classes, stored in a single memory-mapped pack file.
+ *
+ * Entries are keyed by a SHA-256 hash of the original class bytes, the bytes of the
+ * injection class applied to it and the build of the library, read from the manifest of its jar. The whole
+ * pack is dropped when the build or the hash of injects.json changes. Only the entries used during a launch are
+ * written back on shutdown, so stale classes do not accumulate.
+ *
+ * The pack is moved aside before being mapped, and the new one written under its original name:
+ * a mapped file cannot be replaced on every platform, and is only unmapped once collected.
+ *
+ * Enabled by pointing the <code>inject.cache</code> system property to the pack file.
+ */
+public class TransformCache {
+
+    private static final int MAGIC = 0x494E4A43;
+    private static final int FORMAT = 1;
+    private static final int KEY_LENGTH = 32;
+
+    private static final TransformCache instance = create();
+
+    private final File file;
+    private final File mappedFile;
+    private final byte[] configHash;
+    private final byte[] build = readBuild(getLocation());
+    private final Map<ByteBuffer, Entry> entries = new ConcurrentHashMap<ByteBuffer, Entry>();
+    private final Map<ByteBuffer, byte[]> used = new ConcurrentHashMap<ByteBuffer, byte[]>();
+    private MappedByteBuffer buffer;
+    private volatile boolean dirty;
+
+    public TransformCache(File file, byte[] configHash) {
+        this.file = file;
+        this.mappedFile = new File(file.getPath() + ".mapped");
+        this.configHash = configHash;
+    }
+
+    private static TransformCache create() {
+        String path = System.getProperty("inject.cache");
+
+        if (path == null || path.isEmpty())
+            return null;
+
+        TransformCache cache = new TransformCache(new File(path), Injects.getInstance().getConfigHash());
+        cache.load();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(cache::save, "Inject cache writer"));
+
+        return cache;
+    }
+
+    public void load() {
+        try {
+            // Without a pack under the original name, the last launch left the one it read as is
+            if (this.file.isFile())
+                Files.move(this.file.toPath(), this.mappedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("Inject - Could not move transform cache aside: " + this.file);
+            e.printStackTrace();
+            return;
+        }
+
+        if (!this.mappedFile.isFile())
+            return;
+
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(this.mappedFile, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT)
+                return;
+
+            byte[] build = new byte[buffer.getShort()];
+            buffer.get(build);
+
+            byte[] configHash = new byte[KEY_LENGTH];
+            buffer.get(configHash);
+
+            // Any change to the library or to injects.json invalidates the whole pack
+            if (!Arrays.equals(build, this.build) || !Arrays.equals(configHash, this.configHash)) {
+                this.dirty = true;
+                return;
+            }
+
+            int count = buffer.getInt();
+
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[KEY_LENGTH];
+                buffer.get(key);
+
+                int length = buffer.getInt();
+                this.entries.put(ByteBuffer.wrap(key), new Entry(buffer.position(), length));
+                buffer.position(buffer.position() + length);
+            }
+
+            this.buffer = buffer;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Inject - Could not read transform cache: " + this.file);
+            e.printStackTrace();
+
+            this.entries.clear();
+            this.dirty = true;
+        }
+    }
+
+    public byte[] key(byte[] bytes, byte[] salt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes);
+
+            if (salt != null)
+                digest.update(salt);
+
+            digest.update(this.build);
+
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public byte[] get(byte[] key) {
+        ByteBuffer wrappedKey = ByteBuffer.wrap(key);
+        byte[] bytes = this.used.get(wrappedKey);
+
+        if (bytes != null)
+            return bytes;
+
+        Entry entry = this.entries.get(wrappedKey);
+
+        if (entry == null)
+            return null;
+
+        bytes = new byte[entry.length];
+        ByteBuffer slice = this.buffer.duplicate();
+        slice.position(entry.offset);
+        slice.get(bytes);
+
+        this.used.put(wrappedKey, bytes);
+
+        return bytes;
+    }
+
+    public void put(byte[] key, byte[] bytes) {
+        this.used.put(ByteBuffer.wrap(key), bytes);
+        this.dirty = true;
+    }
+
+    /**
+     * Drops a class put in the cache, e.g. when it turned out to be broken.
+     */
+    public void remove(byte[] key) {
+        this.used.remove(ByteBuffer.wrap(key));
+        this.dirty = true;
+    }
+
+    public synchronized void save() {
+        // Nothing new was transformed and every entry was found, the pack on disk is already up to date
+        if (!this.dirty && this.used.size() == this.entries.size())
+            return;
+
+        File parent = this.file.getAbsoluteFile().getParentFile();
+        File temp = new File(parent, this.file.getName() + ".tmp");
+
+        try {
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+                throw new IOException("Cannot create directory " + parent);
+
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT);
+                output.writeShort(this.build.length);
+                output.write(this.build);
+                output.write(this.configHash);
+                output.writeInt(this.used.size());
+
+                for (Map.Entry<ByteBuffer, byte[]> entry : this.used.entrySet()) {
+                    output.write(entry.getKey().array());
+                    output.writeInt(entry.getValue().length);
+                    output.write(entry.getValue());
+                }
+            }
+
+            Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            this.dirty = false;
+        } catch (IOException e) {
+            System.out.println("Inject - Could not write transform cache: " + this.file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the jar or classes directory of the library, or null if it cannot be found
+     */
+    private static File getLocation() {
+        try {
+            CodeSource source = TransformCache.class.getProtectionDomain().getCodeSource();
+
+            return source != null ? new File(source.getLocation().toURI()) : null;
+        } catch (URISyntaxException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Packaged jars carry their version and an id written at build time in their manifest, reading it is enough.
+     * Without one, e.g. while developing the library, the build is a hash of the sizes and dates of its files,
+     * as hashing their content would slow each launch down.
+     *
+     * @return the build of the library, or its version if it cannot be read
+     */
+    static byte[] readBuild(File location) {
+        try {
+            if (location == null)
+                throw new IOException("Unknown location of the library");
+
+            if (location.isFile()) {
+                try (JarFile jar = new JarFile(location)) {
+                    Manifest manifest = jar.getManifest();
+                    String build = manifest != null ? manifest.getMainAttributes().getValue("Inject-Build") : null;
+
+                    if (build != null)
+                        return (manifest.getMainAttributes().getValue("Implementation-Version") + ":" + build).getBytes(StandardCharsets.UTF_8);
+                }
+            }
+
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+            try (Stream<Path> paths = Files.walk(location.toPath())) {
+                Iterator<Path> iterator = paths.filter(Files::isRegularFile).sorted().iterator();
+
+                while (iterator.hasNext()) {
+                    File file = iterator.next().toFile();
+                    digest.update((file.getPath() + ":" + file.length() + ":" + file.lastModified()).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            return digest.digest();
+        } catch (IOException | NoSuchAlgorithmException | RuntimeException e) {
+            String version = TransformCache.class.getPackage().getImplementationVersion();
+
+            System.out.println("Inject - Could not read the build of the library, the cache is keyed by its version " + version);
+
+            return String.valueOf(version).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    public static TransformCache getInstance() {
+        return instance;
+    }
+
+    private static class Entry {
+
+        private final int offset;
+        private final int length;
+
+        private Entry(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.config;
+
+import com.pvphall.inject.InjectPrecise;
+import com.pvphall.inject.InjectType;
+import com.pvphall.inject.annotations.PreciseShift;
+import com.pvphall.inject.annotations.PreciseType;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary manifest of the injection classes, generated at compile time by
+ * {@link com.pvphall.inject.processor.InjectProcessor} and used in place of injects.json.
+ */
+public class Manifest {
+
+    public static final String RESOURCE = "META-INF/inject/injects.bin";
+
+    private static final int MAGIC = 0x494E4A4D;
+    private static final int FORMAT = 3;
+
+    private final List<Entry> entries;
+    private final Map<String, Entry> entriesByName;
+
+    public Manifest(List<Entry> entries) {
+        this.entries = entries;
+        this.entriesByName = new HashMap<String, Entry>();
+
+        for (Entry entry : entries)
+            this.entriesByName.put(entry.getName(), entry);
+    }
+
+    public static Manifest read(byte[] bytes) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        if (input.readInt() != MAGIC || input.readInt() != FORMAT)
+            throw new IOException("Unsupported manifest format");
+
+        int count = input.readInt();
+        List<Entry> entries = new ArrayList<Entry>(count);
+
+        for (int i = 0; i < count; i++) {
+            String name = input.readUTF();
+            String target = input.readUTF();
+            int methodCount = input.readInt();
+            List<MethodEntry> methods = new ArrayList<MethodEntry>(methodCount);
+
+            for (int j = 0; j < methodCount; j++) {
+                String methodName = input.readUTF();
+                String methodDesc = input.readUTF();
+                InjectType type = InjectType.valueOf(input.readUTF());
+                int preciseCount = input.readInt();
+                List<InjectPrecise> precise = new ArrayList<InjectPrecise>(preciseCount);
+
+                for (int k = 0; k < preciseCount; k++)
+                    precise.add(new InjectPrecise(PreciseType.valueOf(input.readUTF()), input.readUTF(), input.readUTF(),
+                            input.readUTF(), input.readInt(), PreciseShift.valueOf(input.readUTF())));
+
+                methods.add(new MethodEntry(methodName, methodDesc, type, precise, input.readUTF()));
+            }
+
+            entries.add(new Entry(name, target, methods));
+        }
+
+        return new Manifest(entries);
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream output = new DataOutputStream(outputStream);
+
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT);
+        output.writeInt(this.entries.size());
+
+        for (Entry entry : this.entries) {
+            output.writeUTF(entry.getName());
+            output.writeUTF(entry.getTarget());
+            output.writeInt(entry.getMethods().size());
+
+            for (MethodEntry method : entry.getMethods()) {
+                output.writeUTF(method.getName());
+                output.writeUTF(method.getDesc());
+                output.writeUTF(method.getType().name());
+                output.writeInt(method.getPrecise().size());
+
+                for (InjectPrecise precise : method.getPrecise()) {
+                    output.writeUTF(precise.getType().name());
+                    output.writeUTF(precise.getName());
+                    output.writeUTF(precise.getOwner());
+                    output.writeUTF(precise.getDesc());
+                    output.writeInt(precise.getOrdinal());
+                    output.writeUTF(precise.getShift().name());
+                }
+
+                output.writeUTF(method.getTargetMethod());
+            }
+        }
+
+        output.flush();
+    }
+
+    public Config toConfig() {
+        List<String> injects = new ArrayList<String>(this.entries.size());
+
+        for (Entry entry : this.entries)
+            injects.add(entry.getName());
+
+        return new Config(injects);
+    }
+
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    /**
+     * @param name the binary name of an injection class
+     */
+    public Entry getEntry(String name) {
+        return this.entriesByName.get(name);
+    }
+
+    public static class Entry {
+
+        private final String name;
+        private final String target;
+        private final List<MethodEntry> methods;
+
+        public Entry(String name, String target, List<MethodEntry> methods) {
+            this.name = name;
+            this.target = target;
+            this.methods = methods;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getTarget() {
+            return this.target;
+        }
+
+        public List<MethodEntry> getMethods() {
+            return this.methods;
+        }
+    }
+
+    public static class MethodEntry {
+
+        private final String name;
+        private final String desc;
+        private final InjectType type;
+        private final List<InjectPrecise> precise;
+        private final String targetMethod;
+
+        public MethodEntry(String name, String desc, InjectType type, List<InjectPrecise> precise) {
+            this(name, desc, type, precise, "");
+        }
+
+        public MethodEntry(String name, String desc, InjectType type, List<InjectPrecise> precise, String targetMethod) {
+            this.name = name;
+            this.desc = desc;
+            this.type = type;
+            this.precise = precise;
+            this.targetMethod = targetMethod;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDesc() {
+            return this.desc;
+        }
+
+        public InjectType getType() {
+            return this.type;
+        }
+
+        public List<InjectPrecise> getPrecise() {
+            return this.precise;
+        }
+
+        public String getTargetMethod() {
+            return this.targetMethod;
+        }
+    }
+}
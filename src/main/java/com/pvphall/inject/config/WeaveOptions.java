@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.config;
+
+/**
+ * Features of an {@link com.pvphall.inject.transformers.InjectTransformer} which only belong to a running game.
+ *
+ * A new instance turns all of them off, as when weaving at build time, so the woven classes only depend on the
+ * injections. {@link #fromProperties()} reads them from the system properties, as a launch does.
+ */
+public class WeaveOptions {
+
+    private boolean eager;
+    private int eagerThreads = Runtime.getRuntime().availableProcessors();
+    private boolean streaming;
+    private boolean cache;
+    private boolean probes;
+    private boolean metrics;
+    private boolean verify;
+    private boolean shared;
+
+    /**
+     * The cache, probes, metrics and verification are then still only used once enabled by their own property.
+     * The injection classes read are shared with the rest of the game.
+     *
+     * @return the options of a launch, read from the <code>inject.*</code> system properties
+     */
+    public static WeaveOptions fromProperties() {
+        WeaveOptions options = new WeaveOptions();
+        options.eager = Boolean.getBoolean("inject.eager");
+        options.eagerThreads = Integer.getInteger("inject.eager.threads", options.eagerThreads);
+        options.streaming = Boolean.getBoolean("inject.streaming");
+        options.cache = true;
+        options.probes = true;
+        options.metrics = true;
+        options.verify = true;
+        options.shared = true;
+
+        return options;
+    }
+
+    /**
+     * @param eager whether every target is woven on a worker pool as soon as the transformer is created
+     */
+    public WeaveOptions setEager(boolean eager) {
+        this.eager = eager;
+        return this;
+    }
+
+    public WeaveOptions setEagerThreads(int eagerThreads) {
+        this.eagerThreads = eagerThreads;
+        return this;
+    }
+
+    /**
+     * @param streaming whether classes are woven in a single pass of visitors rather than through their tree
+     */
+    public WeaveOptions setStreaming(boolean streaming) {
+        this.streaming = streaming;
+        return this;
+    }
+
+    /**
+     * @param cache whether the persistent cache of woven classes is used, see {@link com.pvphall.inject.cache.TransformCache}
+     */
+    public WeaveOptions setCache(boolean cache) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * @param probes whether hooks are woven with the calls of the counters and events, see {@link com.pvphall.inject.metrics.HookRegistry}
+     */
+    public WeaveOptions setProbes(boolean probes) {
+        this.probes = probes;
+        return this;
+    }
+
+    /**
+     * @param metrics whether transforms are measured and recorded, see {@link com.pvphall.inject.metrics.TransformMetrics}
+     */
+    public WeaveOptions setMetrics(boolean metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @param verify whether woven classes go through the {@link com.pvphall.inject.verify.ClassVerifier}
+     */
+    public WeaveOptions setVerify(boolean verify) {
+        this.verify = verify;
+        return this;
+    }
+
+    /**
+     * @param shared whether the injection classes read are registered in {@link com.pvphall.inject.Injects}, which
+     *               a transformer reading other versions of them, e.g. to reload them, must not replace
+     */
+    public WeaveOptions setShared(boolean shared) {
+        this.shared = shared;
+        return this;
+    }
+
+    public boolean isEager() {
+        return this.eager;
+    }
+
+    public int getEagerThreads() {
+        return this.eagerThreads;
+    }
+
+    public boolean isStreaming() {
+        return this.streaming;
+    }
+
+    public boolean isCache() {
+        return this.cache;
+    }
+
+    public boolean isProbes() {
+        return this.probes;
+    }
+
+    public boolean isMetrics() {
+        return this.metrics;
+    }
+
+    public boolean isVerify() {
+        return this.verify;
+    }
+
+    public boolean isShared() {
+        return this.shared;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.jfr;
+
+import com.pvphall.inject.metrics.ClassMetrics;
+import com.pvphall.inject.metrics.HookRegistry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Java Flight Recorder events of Inject, which are only emitted while a recording enables them:
+ * <ul>
+ *     <li><code>com.pvphall.inject.Transform</code>, for each class woven by a transformer, with the time of each stage</li>
+ *     <li><code>com.pvphall.inject.Hook</code>, a sample of the hooks running, with their stack trace. The hooks are only
+ *     woven with the call emitting it when the <code>inject.jfr.hooks</code> property is set, and one call in
+ *     <code>inject.jfr.hooks.rate</code> (64 by default) emits it</li>
+ * </ul>
+ * Nothing in this class needs <code>jdk.jfr</code>, the events are left out on a JVM without it.
+ */
+public class InjectEvents {
+
+    private static final boolean available = isJfrAvailable();
+    private static final boolean hookSampling = available && Boolean.getBoolean("inject.jfr.hooks");
+    private static final int sampleMask = getSampleMask();
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, InjectEvents.class.getClassLoader());
+
+            return JfrEvents.isAvailable();
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the rate rounded down to a power of two, minus one
+     */
+    private static int getSampleMask() {
+        int rate = Math.max(1, Integer.getInteger("inject.jfr.hooks.rate", 64));
+
+        return Integer.highestOneBit(rate) - 1;
+    }
+
+    /**
+     * @return true if the JVM has Java Flight Recorder
+     */
+    public static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * @return true if the hooks are woven with a call to {@link #hook(int)}
+     */
+    public static boolean isHookSampling() {
+        return hookSampling;
+    }
+
+    /**
+     * Starts timing the transform of a class, until {@link #commitTransform(Object, String, ClassMetrics, int, byte[])}.
+     *
+     * @return the event, or null if no recording enables it
+     */
+    public static Object beginTransform() {
+        return available ? JfrEvents.beginTransform() : null;
+    }
+
+    /**
+     * @param event the event given by {@link #beginTransform()}
+     * @param transformed the bytes given back by the transformer, the original ones if the class was left as is
+     */
+    public static void commitTransform(Object event, String transformer, ClassMetrics metrics, int originalLength, byte[] transformed) {
+        JfrEvents.commitTransform(event, transformer, metrics, originalLength, transformed);
+    }
+
+    /**
+     * Called by the woven hooks, emits an event for a sample of the calls.
+     *
+     * @param id the id of the hook in the {@link HookRegistry}
+     */
+    public static void hook(int id) {
+        // Sampled per thread, so that hot hooks running on several threads do not write to a shared counter
+        if ((ThreadLocalRandom.current().nextInt() & sampleMask) != 0)
+            return;
+
+        HookRegistry hooks = HookRegistry.getInstance();
+
+        if (hooks != null)
+            JfrEvents.commitHook(hooks.getHook(id));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.jfr;
+
+import com.pvphall.inject.metrics.ClassMetrics;
+import com.pvphall.inject.metrics.Hook;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * The only class using the event classes, loaded once {@link InjectEvents} knows <code>jdk.jfr</code> is there.
+ */
+class JfrEvents {
+
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    static Object beginTransform() {
+        TransformEvent event = new TransformEvent();
+
+        if (!event.isEnabled())
+            return null;
+
+        event.begin();
+
+        return event;
+    }
+
+    static void commitTransform(Object transformEvent, String transformer, ClassMetrics metrics, int originalLength, byte[] transformed) {
+        TransformEvent event = (TransformEvent) transformEvent;
+        event.end();
+
+        if (!event.shouldCommit())
+            return;
+
+        event.transformer = transformer;
+        event.className = metrics.getClassName();
+        event.bytesIn = originalLength;
+        event.bytesOut = transformed != null ? transformed.length : 0;
+        event.parseDuration = metrics.getParseNanos();
+        event.weaveDuration = metrics.getWeaveNanos();
+        event.writeDuration = metrics.getWriteNanos();
+        event.failed = metrics.isFailed();
+        event.commit();
+    }
+
+    static void commitHook(Hook hook) {
+        HookEvent event = new HookEvent();
+
+        if (!event.isEnabled())
+            return;
+
+        event.hook = hook.getName();
+        event.injectType = hook.getType().name();
+        event.commit();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.loaders;
+
+import com.pvphall.inject.InjectAccessor;
+import com.pvphall.inject.InjectClass;
+import com.pvphall.inject.InjectTemplate;
+import com.pvphall.inject.api.loaders.ILoader;
+import com.pvphall.inject.api.transformers.TransformContext;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds the fields of an injection class to its target, runs their initializers in the constructors
+ * and static initializer of the target, and implements its accessors.
+ */
+public class FieldsLoader implements ILoader {
+
+    @Override
+    public void transform(TransformContext context, InjectClass injectClass) {
+        ClassNode node = context.getNode();
+        Set<String> rejected = new HashSet<String>();
+
+        for (FieldNode field : injectClass.getFields()) {
+            FieldNode existing = this.getField(node, field.name);
+
+            if (existing == null) {
+                node.fields.add(new FieldNode(field.access, field.name, field.desc, field.signature, field.value));
+                context.markModified();
+            } else if (!existing.desc.equals(field.desc) || (existing.access & Opcodes.ACC_STATIC) != (field.access & Opcodes.ACC_STATIC)) {
+                // Its initializer would store a value of another type, the class would not verify
+                System.out.println("Inject - Field already in " + node.name + " with another type: " + field.name);
+                rejected.add(field.name);
+            } else {
+                System.out.println("Inject - Field already in " + node.name + ": " + field.name);
+            }
+        }
+
+        List<InjectTemplate> initializers = this.getInitializers(injectClass.getInitializers(), rejected);
+        List<InjectTemplate> staticInitializers = this.getInitializers(injectClass.getStaticInitializers(), rejected);
+
+        if (!initializers.isEmpty())
+            for (MethodNode method : node.methods)
+                if (method.name.equals("<init>"))
+                    this.initialize(context, method, initializers);
+
+        if (!staticInitializers.isEmpty())
+            this.initialize(context, this.getStaticInitializer(context), staticInitializers);
+
+        for (InjectAccessor accessor : injectClass.getAccessors())
+            this.implement(context, accessor);
+    }
+
+    /**
+     * Classes gaining fields or accessors go through the tree, as constructors are rewritten and members added at the end.
+     */
+    @Override
+    public ClassVisitor visitor(ClassVisitor next, TransformContext context, InjectClass injectClass) {
+        return injectClass.getFields().isEmpty() && injectClass.getAccessors().isEmpty() ? next : null;
+    }
+
+    private List<InjectTemplate> getInitializers(Map<String, InjectTemplate> initializers, Set<String> rejected) {
+        List<InjectTemplate> accepted = new ArrayList<InjectTemplate>();
+
+        for (Map.Entry<String, InjectTemplate> entry : initializers.entrySet())
+            if (!rejected.contains(entry.getKey()))
+                accepted.add(entry.getValue());
+
+        return accepted;
+    }
+
+    /**
+     * Inserts the initializers, in their order, right after the call to the super constructor. Constructors
+     * delegating to another constructor of the class are skipped, so the fields are initialized only once.
+     */
+    private void initialize(TransformContext context, MethodNode method, List<InjectTemplate> initializers) {
+        AbstractInsnNode location = method.name.equals("<init>") ? InjectClass.findSuperCall(method) : null;
+
+        if (location instanceof MethodInsnNode && ((MethodInsnNode) location).owner.equals(context.getNode().name))
+            return;
+
+        InsnList instructions = new InsnList();
+        List<TryCatchBlockNode> tryCatchBlocks = new ArrayList<TryCatchBlockNode>();
+        int maxLocals = method.maxLocals;
+
+        for (InjectTemplate initializer : initializers) {
+            InjectTemplate.Stamp stamp = initializer.stampInline(method);
+
+            instructions.add(stamp.getInstructions());
+            tryCatchBlocks.addAll(stamp.getTryCatchBlocks());
+            maxLocals = Math.max(maxLocals, stamp.getMaxLocals());
+        }
+
+        context.indexInstructions(method);
+
+        if (location != null)
+            method.instructions.insert(location, instructions);
+        else
+            method.instructions.insert(instructions);
+
+        method.tryCatchBlocks.addAll(0, tryCatchBlocks);
+        method.maxLocals = maxLocals;
+        context.markModified(method);
+    }
+
+    private MethodNode getStaticInitializer(TransformContext context) {
+        MethodNode method = context.getMethod("<clinit>", "()V");
+
+        if (method == null) {
+            method = new MethodNode(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+            method.instructions.add(new InsnNode(Opcodes.RETURN));
+            context.addMethod(method);
+        }
+
+        return method;
+    }
+
+    private void implement(TransformContext context, InjectAccessor accessor) {
+        MethodNode abstractMethod = accessor.getMethod();
+        ClassNode node = context.getNode();
+
+        if (context.getMethod(abstractMethod.name, abstractMethod.desc) != null)
+            return;
+
+        FieldNode field = this.getField(node, accessor.getField());
+
+        if (field == null) {
+            System.out.println("Inject - Field not found in " + node.name + " for accessor " + abstractMethod.name + ": " + accessor.getField());
+            return;
+        }
+
+        Type[] arguments = Type.getArgumentTypes(abstractMethod.desc);
+        boolean isGetter = arguments.length == 0 && Type.getReturnType(abstractMethod.desc).getDescriptor().equals(field.desc);
+
+        if (accessor.isSetter() ? !arguments[0].getDescriptor().equals(field.desc) : !isGetter) {
+            System.out.println("Inject - Accessor " + abstractMethod.name + abstractMethod.desc + " does not match the type of " + node.name + "." + field.name + ": " + field.desc);
+            return;
+        }
+
+        boolean isStatic = (field.access & Opcodes.ACC_STATIC) != 0;
+        Type type = Type.getType(field.desc);
+        MethodNode method = new MethodNode(abstractMethod.access & ~Opcodes.ACC_ABSTRACT, abstractMethod.name, abstractMethod.desc, abstractMethod.signature,
+                abstractMethod.exceptions.toArray(new String[0]));
+
+        if (!isStatic)
+            method.instructions.add(new VarInsnNode(Opcodes.ALOAD, 0));
+
+        if (accessor.isSetter()) {
+            method.instructions.add(new VarInsnNode(type.getOpcode(Opcodes.ILOAD), (abstractMethod.access & Opcodes.ACC_STATIC) != 0 ? 0 : 1));
+            method.instructions.add(new FieldInsnNode(isStatic ? Opcodes.PUTSTATIC : Opcodes.PUTFIELD, node.name, field.name, field.desc));
+            method.instructions.add(new InsnNode(Opcodes.RETURN));
+        } else {
+            method.instructions.add(new FieldInsnNode(isStatic ? Opcodes.GETSTATIC : Opcodes.GETFIELD, node.name, field.name, field.desc));
+            method.instructions.add(new InsnNode(type.getOpcode(Opcodes.IRETURN)));
+        }
+
+        method.maxLocals = Type.getArgumentsAndReturnSizes(method.desc) >> 2;
+        context.addMethod(method);
+    }
+
+    private FieldNode getField(ClassNode node, String name) {
+        for (FieldNode field : node.fields)
+            if (field.name.equals(name))
+                return field;
+
+        return null;
+    }
+}
@@ -24,64 +24,229 @@
 
 package com.pvphall.inject.loaders;
 
+import com.pvphall.inject.InjectClass;
 import com.pvphall.inject.Injects;
-import com.pvphall.inject.annotations.Injectable;
+import com.pvphall.inject.Streams;
 import com.pvphall.inject.api.loaders.ILoader;
+import com.pvphall.inject.api.transformers.TransformContext;
+import com.pvphall.inject.config.Manifest;
+import com.pvphall.inject.config.WeaveOptions;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
 
 public class InjectionsLoader {
 
     private final Injects injects = Injects.getInstance();
-    private Map<String, Class<? extends Injectable>> injectionClasses;
+    private final ClassLoader classLoader;
+    private final boolean shared;
+    // Both are built once by registerInjectionClasses and never modified after, reads do not need any lock
+    private volatile Map<String, InjectClass> injectionClasses;
+    private volatile Map<String, byte[]> cacheSalts;
+    // Injection classes the loader above could not read, looked up once in each other loader defining classes
+    private volatile Set<String> missingClasses = Collections.emptySet();
+    private final Set<ClassLoader> searchedLoaders = Collections.newSetFromMap(new WeakHashMap<ClassLoader, Boolean>());
     private ILoader[] loaders;
 
     public InjectionsLoader() {
-        this.injectionClasses = new HashMap<String, Class<? extends Injectable>>();
+        this(InjectionsLoader.class.getClassLoader());
+    }
+
+    public InjectionsLoader(ClassLoader classLoader) {
+        this(classLoader, WeaveOptions.fromProperties());
+    }
+
+    public InjectionsLoader(ClassLoader classLoader, WeaveOptions options) {
+        this.classLoader = classLoader;
+        this.shared = options.isShared();
+        this.injectionClasses = Collections.emptyMap();
+        this.cacheSalts = Collections.emptyMap();
         this.loaders = new ILoader[] {
             new InterfacesLoader(),
-            new MethodsLoader(),
+            new FieldsLoader(),
+            new MethodsLoader(options),
         };
     }
 
-    public void transform(ClassNode node, String className) {
-        Class<? extends Injectable> injectable = this.injectionClasses.get(className);
+    public void transform(TransformContext context) {
+        InjectClass injectClass = this.injectionClasses.get(context.getClassName());
 
-        if (injectable == null)
+        if (injectClass == null)
             return;
 
         for (ILoader loader : this.loaders)
-            loader.transform(node, injectable);
+            loader.transform(context, injectClass);
+    }
+
+    /**
+     * @return a visitor applying every loader in a single pass, or null if one of them does not support it
+     */
+    public ClassVisitor visitor(ClassVisitor next, TransformContext context) {
+        InjectClass injectClass = this.injectionClasses.get(context.getClassName());
+
+        if (injectClass == null)
+            return next;
+
+        ClassVisitor visitor = next;
+
+        // Chained from the last one, so the loaders see the events in the same order as with the tree
+        for (int i = this.loaders.length - 1; i >= 0; i--) {
+            visitor = this.loaders[i].visitor(visitor, context, injectClass);
+
+            if (visitor == null)
+                return null;
+        }
+
+        return visitor;
+    }
+
+    /**
+     * @return the names of every class targeted by an injection
+     */
+    public Set<String> getTargets() {
+        return this.injectionClasses.keySet();
+    }
+
+    public boolean hasInjection(String className) {
+        return this.injectionClasses.containsKey(className);
+    }
+
+    /**
+     * @return the bytes the woven target depends on besides its own: its injection class and the interfaces it adds
+     */
+    public byte[] getCacheSalt(String className) {
+        return this.cacheSalts.get(className);
     }
 
     public void registerInjectionClasses() {
-        this.injects
-                .getConfig()
-                .getInjects()
-                .stream()
-                .map(this::makeClassInstance)
-                .filter(Objects::nonNull)
-                .forEach(this::addInjectionClass);
+        Map<String, InjectClass> injectionClasses = new HashMap<String, InjectClass>();
+        Map<String, byte[]> cacheSalts = new HashMap<String, byte[]>();
+        Set<String> missingClasses = new HashSet<String>();
+
+        for (String className : this.injects.getConfig().getInjects()) {
+            if (!this.addInjectionClass(className, this.classLoader, injectionClasses, cacheSalts)) {
+                System.out.println("Inject - Could not find class " + className + ", it is looked up in the class loaders of the next classes");
+                missingClasses.add(className);
+            }
+        }
+
+        this.cacheSalts = Collections.unmodifiableMap(cacheSalts);
+        this.injectionClasses = Collections.unmodifiableMap(injectionClasses);
+        this.missingClasses = Collections.unmodifiableSet(missingClasses);
     }
 
-    private Object makeClassInstance(String injectClass) {
-        try {
-            Class<?> clazz = this.getClass().getClassLoader().loadClass(injectClass);
-            return clazz.newInstance();
-        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
-            System.out.println("Failed for " + injectClass);
-            e.printStackTrace();
+    /**
+     * Registers the injection classes which could not be read so far, if the given loader of a class being transformed
+     * reads them. An agent sees the classes of every loader, injection classes may only be visible from their targets'.
+     */
+    public void registerInjectionClasses(ClassLoader classLoader) {
+        if (this.missingClasses.isEmpty() || classLoader == null || classLoader == this.classLoader)
+            return;
+
+        synchronized (this.searchedLoaders) {
+            if (!this.searchedLoaders.add(classLoader))
+                return;
+
+            Map<String, InjectClass> injectionClasses = new HashMap<String, InjectClass>(this.injectionClasses);
+            Map<String, byte[]> cacheSalts = new HashMap<String, byte[]>(this.cacheSalts);
+            Set<String> missingClasses = new HashSet<String>();
+
+            for (String className : this.missingClasses)
+                if (!this.addInjectionClass(className, classLoader, injectionClasses, cacheSalts))
+                    missingClasses.add(className);
+
+            if (missingClasses.size() == this.missingClasses.size())
+                return;
+
+            this.cacheSalts = Collections.unmodifiableMap(cacheSalts);
+            this.injectionClasses = Collections.unmodifiableMap(injectionClasses);
+            this.missingClasses = Collections.unmodifiableSet(missingClasses);
         }
+    }
 
-        return null;
+    /**
+     * Reads the annotations of an injection class from its bytes, without loading nor initializing it.
+     *
+     * @return false if the loader could not find the class
+     */
+    private boolean addInjectionClass(String className, ClassLoader classLoader, Map<String, InjectClass> injectionClasses, Map<String, byte[]> cacheSalts) {
+        byte[] bytes = this.readClassBytes(className, classLoader);
+
+        if (bytes == null)
+            return false;
+
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, ClassReader.SKIP_FRAMES);
+
+        Map<String, ClassNode> interfaceNodes = new LinkedHashMap<String, ClassNode>();
+        ByteArrayOutputStream salt = new ByteArrayOutputStream();
+        salt.write(bytes, 0, bytes.length);
+
+        // The frames of the woven methods depend on the hierarchy of the interfaces added to the target
+        for (String interfaceName : node.interfaces)
+            this.readInterface(interfaceName, classLoader, interfaceNodes, salt);
+
+        List<ClassNode> interfaces = new ArrayList<ClassNode>(interfaceNodes.values());
+        Manifest manifest = this.injects.getManifest();
+        Manifest.Entry entry = manifest != null ? manifest.getEntry(className) : null;
+        InjectClass injectClass = entry != null ? new InjectClass(node, entry, interfaces) : new InjectClass(node, interfaces);
+
+        if (injectClass.getTarget() == null) {
+            System.out.println("Inject - Missing @Injectable on " + className);
+            return true;
+        }
+
+        if (this.shared)
+            this.injects.addInjectClass(className, injectClass);
+
+        injectionClasses.put(injectClass.getTarget(), injectClass);
+        cacheSalts.put(injectClass.getTarget(), salt.toByteArray());
+
+        return true;
     }
 
-    private void addInjectionClass(Object object) {
-        Class<?> clazz = object.getClass();
-        Injectable injectable = clazz.getAnnotation(Injectable.class);
+    /**
+     * Reads an interface of an injection class and the ones it extends, for their accessors, without loading them.
+     */
+    private void readInterface(String interfaceName, ClassLoader classLoader, Map<String, ClassNode> interfaceNodes, ByteArrayOutputStream salt) {
+        if (interfaceNodes.containsKey(interfaceName))
+            return;
+
+        byte[] bytes = this.readClassBytes(interfaceName.replace('/', '.'), classLoader);
+
+        if (bytes == null)
+            return;
+
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, ClassReader.SKIP_CODE | ClassReader.SKIP_FRAMES);
+        interfaceNodes.put(interfaceName, node);
+        salt.write(bytes, 0, bytes.length);
+
+        for (String superInterface : node.interfaces)
+            this.readInterface(superInterface, classLoader, interfaceNodes, salt);
+    }
 
-        if (injectable != null)
-            this.injectionClasses.put(injectable.target(), (Class<? extends Injectable>) clazz);
+    /**
+     * @return the bytes of the class, or null if the loader cannot find it
+     */
+    private byte[] readClassBytes(String className, ClassLoader classLoader) {
+        String resource = className.replace(".", "/") + ".class";
+
+        try (InputStream inputStream = classLoader.getResourceAsStream(resource)) {
+            if (inputStream == null)
+                return null;
+
+            return Streams.readFully(inputStream);
+        } catch (IOException e) {
+            System.out.println("Inject - Could not read bytes of " + className);
+            e.printStackTrace();
+        }
+
+        return null;
     }
 }
@@ -24,19 +24,48 @@
 
 package com.pvphall.inject.loaders;
 
-import com.pvphall.inject.annotations.Injectable;
+import com.pvphall.inject.InjectClass;
 import com.pvphall.inject.api.loaders.ILoader;
+import com.pvphall.inject.api.transformers.TransformContext;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 public class InterfacesLoader implements ILoader {
 
     @Override
-    public void transform(ClassNode node, Class<? extends Injectable> injectable) {
-        for (Class<?> current : injectable.getInterfaces()) {
-            String interfaceName = current.getName().replace(".", "/");
+    public void transform(TransformContext context, InjectClass injectClass) {
+        ClassNode node = context.getNode();
 
-            if (!node.interfaces.contains(interfaceName))
+        for (String interfaceName : injectClass.getInterfaces()) {
+            if (!node.interfaces.contains(interfaceName)) {
                 node.interfaces.add(interfaceName);
+                context.markModified();
+            }
         }
     }
+
+    @Override
+    public ClassVisitor visitor(ClassVisitor next, TransformContext context, InjectClass injectClass) {
+        return new ClassVisitor(Opcodes.ASM9, next) {
+
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                List<String> interfaceNames = new ArrayList<String>(Arrays.asList(interfaces));
+
+                for (String interfaceName : injectClass.getInterfaces()) {
+                    if (!interfaceNames.contains(interfaceName)) {
+                        interfaceNames.add(interfaceName);
+                        context.markModified();
+                    }
+                }
+
+                super.visit(version, access, name, signature, superName, interfaceNames.toArray(new String[0]));
+            }
+        };
+    }
 }
@@ -24,193 +24,621 @@
 
 package com.pvphall.inject.loaders;
 
+import com.pvphall.inject.InjectClass;
+import com.pvphall.inject.InjectMethod;
+import com.pvphall.inject.InjectPrecise;
+import com.pvphall.inject.InjectTemplate;
 import com.pvphall.inject.InjectType;
-import com.pvphall.inject.Injects;
-import com.pvphall.inject.annotations.Inject;
-import com.pvphall.inject.annotations.Injectable;
-import com.pvphall.inject.annotations.Precise;
+import com.pvphall.inject.annotations.PreciseShift;
 import com.pvphall.inject.annotations.PreciseType;
 import com.pvphall.inject.api.loaders.ILoader;
+import com.pvphall.inject.api.transformers.InstructionIndex;
+import com.pvphall.inject.api.transformers.OperandStack;
+import com.pvphall.inject.api.transformers.TransformContext;
+import com.pvphall.inject.config.WeaveOptions;
+import com.pvphall.inject.jfr.InjectEvents;
+import com.pvphall.inject.metrics.Hook;
+import com.pvphall.inject.metrics.HookRegistry;
+import com.pvphall.inject.metrics.TransformMetrics;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.*;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
 
-import java.lang.reflect.Method;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MethodsLoader implements ILoader {
 
-    private final Injects injects = Injects.getInstance();
+    private static final String CALLBACK_INFO = Type.getType(InjectType.CALLBACK_INFO).getInternalName();
+    private static final String INJECT_EVENTS = Type.getInternalName(InjectEvents.class);
+    private static final String HOOK_REGISTRY = Type.getInternalName(HookRegistry.class);
+
+    private final WeaveOptions options;
+
+    public MethodsLoader() {
+        this(WeaveOptions.fromProperties());
+    }
+
+    public MethodsLoader(WeaveOptions options) {
+        this.options = options;
+    }
 
     @Override
-    public void transform(ClassNode node, Class<? extends Injectable> injectable) {
-        for (Method method : injectable.getDeclaredMethods()) {
-            Inject inject = method.getAnnotation(Inject.class);
+    public void transform(TransformContext context, InjectClass injectClass) {
+        for (InjectMethod injectMethod : injectClass.getInjectMethods())
+            this.apply(context, injectClass, injectMethod, this.getTargetMethod(context, injectMethod));
+    }
+
+    @Override
+    public ClassVisitor visitor(ClassVisitor next, TransformContext context, InjectClass injectClass) {
+        // A target without a descriptor may be overloaded further in the class, only the tree sees every method first
+        for (InjectMethod injectMethod : injectClass.getInjectMethods())
+            if (injectMethod.getType() != InjectType.CREATE && injectMethod.getTargetDesc() == null)
+                return null;
+
+        return new MethodsVisitor(next, context, injectClass);
+    }
 
-            if (inject == null)
+    /**
+     * @return the target of the injection, or null if it is not found or its name alone matches several methods
+     */
+    private MethodNode getTargetMethod(TransformContext context, InjectMethod injectMethod) {
+        String desc = injectMethod.getTargetDesc();
+
+        if (desc != null)
+            return context.getMethod(injectMethod.getTargetName(), desc);
+
+        MethodNode target = null;
+
+        for (MethodNode method : context.getNode().methods) {
+            if (!method.name.equals(injectMethod.getTargetName()))
                 continue;
 
-            String targetMethod = method.getName();
-            InjectType injectType = inject.type();
-            MethodNode methodNode = node.methods.stream().filter(current -> current.name.equals(targetMethod)).findFirst().orElse(null);
-            MethodNode injectMethodNode = this.injects.getInjectForClass(injectable.getName(), targetMethod);
+            if (target != null) {
+                System.out.println("Inject - Ambiguous target " + injectMethod.getTargetName() + " for " + injectMethod.getName() + ", add its descriptor to method");
+                return null;
+            }
+
+            target = method;
+        }
+
+        return target;
+    }
+
+    private void apply(TransformContext context, InjectClass injectClass, InjectMethod injectMethod, MethodNode methodNode) {
+        TransformMetrics metrics = this.options.isMetrics() ? TransformMetrics.getInstance() : null;
+        long start = System.nanoTime();
+        InjectType injectType = injectMethod.getType();
+
+        // Before anything is inserted, locations are never looked up in the code of the hooks
+        if (methodNode != null)
+            context.indexInstructions(methodNode);
+
+        switch (injectType) {
+            case INSERT_START:
+                this.insertStart(context, methodNode, injectMethod);
+                break;
+            case INSERT_END:
+                this.insertEnd(context, methodNode, injectMethod);
+                break;
+            case PRECISE:
+                this.precise(context, methodNode, injectMethod);
+                break;
+            case REPLACE:
+                this.replace(context, methodNode, injectMethod);
+                break;
+            case CREATE:
+                this.createMethod(context, injectMethod);
+                break;
+            case CALLBACK:
+                this.callback(context, methodNode, injectMethod);
+                break;
+            case REDIRECT:
+                this.redirect(context, methodNode, injectMethod);
+                break;
+            default:
+                System.out.println("Inject - Unknown inject type: " + injectType);
+                break;
+        }
+
+        if (metrics != null)
+            metrics.recordInjection(injectType, System.nanoTime() - start);
+    }
+
+    private void insertStart(TransformContext context, MethodNode method, InjectMethod injectMethod) {
+        if (method == null) {
+            System.out.println("Inject - Target method not found for INSERT_START: " + injectMethod.getName());
+            return;
+        }
+
+        this.insert(context, method, method.instructions.getFirst(), false, injectMethod);
+    }
+
+    private void insertEnd(TransformContext context, MethodNode method, InjectMethod injectMethod) {
+        if (method == null) {
+            System.out.println("Inject - Target method not found for INSERT_END: " + injectMethod.getName());
+            return;
+        }
+
+        AbstractInsnNode lastNode = method.instructions.getLast();
+
+        // Before the last return, the end label and line numbers of the method are after it
+        while (lastNode != null && (lastNode.getOpcode() < Opcodes.IRETURN || lastNode.getOpcode() > Opcodes.RETURN))
+            lastNode = lastNode.getPrevious();
+
+        if (lastNode == null) {
+            System.out.println("Inject - Return not found for INSERT_END: " + injectMethod.getName());
+            return;
+        }
+
+        this.insert(context, method, lastNode, false, injectMethod);
+    }
+
+    private void precise(TransformContext context, MethodNode method, InjectMethod injectMethod) {
+        if (method == null) {
+            System.out.println("Inject - Target method not found for PRECISE: " + injectMethod.getName());
+            return;
+        }
+
+        List<InjectPrecise> precise = injectMethod.getPrecise();
 
-            if (injectMethodNode == null) {
-                System.out.println("Inject - Could not find method to inject: " + targetMethod);
+        if (precise.isEmpty()) {
+            System.out.println("Inject - PRECISE not found in annotations: " + injectMethod.getName());
+            return;
+        }
+
+        for (InjectPrecise current : precise) {
+            boolean after = current.getShift() == PreciseShift.AFTER;
+
+            if (after && current.getType() == PreciseType.RETURN) {
+                System.out.println("Inject - PRECISE RETURN cannot be shifted after: " + injectMethod.getName());
                 continue;
             }
 
-            switch (injectType) {
-                case INSERT_START:
-                    this.insertStart(node, injectable, methodNode, injectMethodNode);
-                    break;
-                case INSERT_END:
-                    this.insertEnd(node, injectable, methodNode, injectMethodNode);
-                    break;
-                case PRECISE:
-                    this.precise(node, injectable, inject, methodNode, injectMethodNode);
-                    break;
-                case REPLACE:
-                    this.replace(node, injectable, methodNode, injectMethodNode);
-                    break;
-                case CREATE:
-                    this.createMethod(node, injectable, injectMethodNode);
+            for (AbstractInsnNode insn : this.findLocations(context, method, injectMethod, current))
+                this.insert(context, method, insn, after, injectMethod);
+        }
+    }
+
+    /**
+     * @return the instructions of the method matched by the precise location, reporting it when there is none
+     */
+    private List<AbstractInsnNode> findLocations(TransformContext context, MethodNode method, InjectMethod injectMethod, InjectPrecise precise) {
+        List<AbstractInsnNode> locations = new ArrayList<AbstractInsnNode>();
+        int ordinal = 0;
+
+        for (AbstractInsnNode insn : context.getInstructions(method).get(precise.getType(), precise.getName())) {
+            if (!precise.matches(insn))
+                continue;
+
+            if (precise.getOrdinal() < 0 || ordinal++ == precise.getOrdinal()) {
+                locations.add(insn);
+
+                if (precise.getOrdinal() >= 0)
                     break;
+            }
+        }
+
+        if (locations.isEmpty())
+            System.out.println("Inject - " + injectMethod.getType() + " location not found for method: " + injectMethod.getName()
+                    + " (" + precise.getType() + " " + precise.getName() + ")");
+
+        return locations;
+    }
+
+    /**
+     * @param after whether to insert right after the location instead of before it
+     */
+    private void insert(TransformContext context, MethodNode method, AbstractInsnNode location, boolean after, InjectMethod injectMethod) {
+        InjectTemplate.Stamp stamp = injectMethod.getTemplate().stampInline(method);
+        InsnList instructions = stamp.getInstructions();
+        int maxLocals = stamp.getMaxLocals();
+        Type[] operands = new Type[0];
+
+        // An exception handler starts with an empty stack, the whole stack is kept in locals while the inserted code runs
+        if (!stamp.getTryCatchBlocks().isEmpty()) {
+            try {
+                operands = OperandStack.at(context.getNode().name, method, location, after);
+            } catch (AnalyzerException e) {
+                System.out.println("Inject - Could not analyze the stack of " + method.name + method.desc + " for " + injectMethod.getName());
+                e.printStackTrace();
+                return;
+            }
+
+            if (operands == null) {
+                System.out.println("Inject - " + injectMethod.getType() + " catching exceptions cannot be inserted while an object created by NEW "
+                        + "is not initialized yet, it cannot be kept aside: " + injectMethod.getName() + " in " + method.name + method.desc);
+                return;
+            }
+        }
+
+        instructions.insert(this.createProbes(injectMethod));
+
+        if (operands.length > 0) {
+            InsnList stores = new InsnList();
+            int[] slots = new int[operands.length];
+
+            for (int i = 0; i < operands.length; i++) {
+                slots[i] = maxLocals;
+                maxLocals += operands[i].getSize();
+            }
+
+            for (int i = operands.length - 1; i >= 0; i--)
+                stores.add(new VarInsnNode(operands[i].getOpcode(Opcodes.ISTORE), slots[i]));
+
+            for (int i = 0; i < operands.length; i++)
+                instructions.add(new VarInsnNode(operands[i].getOpcode(Opcodes.ILOAD), slots[i]));
+
+            instructions.insert(stores);
+        }
+
+        if (after)
+            method.instructions.insert(location, instructions);
+        else
+            method.instructions.insertBefore(location, instructions);
+        // Handlers of the inserted code are inner ones, they come before any handler of the target around it
+        method.tryCatchBlocks.addAll(0, stamp.getTryCatchBlocks());
+
+        if (!stamp.getLocalVariables().isEmpty()) {
+            if (method.localVariables == null)
+                method.localVariables = new ArrayList<LocalVariableNode>();
+
+            method.localVariables.addAll(stamp.getLocalVariables());
+        }
+
+        method.maxLocals = maxLocals;
+        context.markModified(method);
+    }
+
+    /**
+     * @return the types on top of the stack right before or after the instruction which are its operands or its result.
+     * An object not yet initialized, created by NEW or given to a constructor, is never part of it as it cannot be stored.
+     */
+    private Type[] getOperands(MethodNode method, AbstractInsnNode insn, boolean after) {
+        int opcode = insn.getOpcode();
+
+        if (insn instanceof MethodInsnNode) {
+            MethodInsnNode methodInsn = (MethodInsnNode) insn;
+
+            if (methodInsn.name.equals("<init>"))
+                return new Type[0];
+
+            if (after)
+                return this.single(Type.getReturnType(methodInsn.desc));
+
+            Type[] arguments = Type.getArgumentTypes(methodInsn.desc);
+
+            if (opcode == Opcodes.INVOKESTATIC)
+                return arguments;
+
+            Type[] operands = new Type[arguments.length + 1];
+            operands[0] = Type.getObjectType(methodInsn.owner);
+            System.arraycopy(arguments, 0, operands, 1, arguments.length);
+
+            return operands;
+        }
+
+        if (insn instanceof FieldInsnNode) {
+            FieldInsnNode fieldInsn = (FieldInsnNode) insn;
+            Type owner = Type.getObjectType(fieldInsn.owner);
+            Type field = Type.getType(fieldInsn.desc);
+
+            switch (opcode) {
+                case Opcodes.GETFIELD:
+                    return after ? new Type[] { field } : new Type[] { owner };
+                case Opcodes.GETSTATIC:
+                    return after ? new Type[] { field } : new Type[0];
+                case Opcodes.PUTFIELD:
+                    return after ? new Type[0] : new Type[] { owner, field };
                 default:
-                    System.out.println("Inject - Unknown inject type: " + injectType);
-                    break;
+                    return after ? new Type[0] : new Type[] { field };
             }
         }
+
+        if (opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN)
+            return this.single(Type.getReturnType(method.desc));
+
+        if (after && InstructionIndex.getConstant(insn) != null)
+            return new Type[] { InstructionIndex.getConstantType(insn) };
+
+        return new Type[0];
     }
 
-    private void insertStart(ClassNode node, Class<? extends Injectable> injectable, MethodNode method, MethodNode injectMethod) {
+    private Type[] single(Type type) {
+        return type == Type.VOID_TYPE ? new Type[0] : new Type[] { type };
+    }
+
+    private void replace(TransformContext context, MethodNode method, InjectMethod injectMethod) {
         if (method == null) {
-            System.out.println("Inject - Target method not found for INSERT_START: " + injectMethod.name);
+            System.out.println("Inject - Target method not found for REPLACE: " + injectMethod.getName());
             return;
         }
 
-        AbstractInsnNode firstNode = method.instructions.getFirst();
-
-        MethodNode newMethodNode = new MethodNode();
-        injectMethod.instructions.remove(injectMethod.instructions.getLast());
-        injectMethod.instructions.remove(injectMethod.instructions.getLast());
-        injectMethod.instructions.accept(newMethodNode);
+        context.removeMethod(method);
 
-        InsnList list = this.replaceOwner(newMethodNode.instructions, injectable.getName(), node.name);
-        method.instructions.insertBefore(firstNode, list);
+        this.createMethod(context, injectMethod);
     }
 
-    private void insertEnd(ClassNode node, Class<? extends Injectable> injectable, MethodNode method, MethodNode injectMethod) {
+    /**
+     * Copies the injection method in the target as a private method, and calls it at the start of the target
+     * with a new {@link com.pvphall.inject.api.callbacks.CallbackInfo}, returning its result if it was cancelled.
+     */
+    private void callback(TransformContext context, MethodNode method, InjectMethod injectMethod) {
         if (method == null) {
-            System.out.println("Inject - Target method not found for INSERT_END: " + injectMethod.name);
+            System.out.println("Inject - Target method not found for CALLBACK: " + injectMethod.getName());
+            return;
+        }
+
+        if (InjectType.CALLBACK.getTargetDesc(injectMethod.getDesc()).equals(injectMethod.getDesc()) || method.name.equals("<init>")) {
+            System.out.println("Inject - CALLBACK needs a CallbackInfo as last parameter and cannot target constructors: " + injectMethod.getName());
             return;
         }
 
-        AbstractInsnNode lastNode = method.instructions.get(method.instructions.size() - 2);
+        // The result of the hook is what the target returns when cancelled, any other descriptor would not verify
+        if (!InjectType.CALLBACK.getTargetDesc(injectMethod.getDesc()).equals(method.desc)) {
+            System.out.println("Inject - CALLBACK must take the parameters of its target " + method.name + method.desc
+                    + " and return the same type: " + injectMethod.getName() + injectMethod.getDesc());
+            return;
+        }
+
+        boolean isStatic = (method.access & Opcodes.ACC_STATIC) != 0;
+        MethodNode hook = this.copyMethod(injectMethod, Opcodes.ACC_PRIVATE | (isStatic ? Opcodes.ACC_STATIC : 0), this.getHookName(context, "callback$", injectMethod));
+        context.addMethod(hook);
+
+        Type returnType = Type.getReturnType(method.desc);
+        int info = method.maxLocals;
+        int result = info + 1;
+        int slot = isStatic ? 0 : 1;
+        LabelNode proceed = new LabelNode();
+        InsnList list = new InsnList();
+
+        list.add(new TypeInsnNode(Opcodes.NEW, CALLBACK_INFO));
+        list.add(new InsnNode(Opcodes.DUP));
+        list.add(new MethodInsnNode(Opcodes.INVOKESPECIAL, CALLBACK_INFO, "<init>", "()V", false));
+        list.add(new VarInsnNode(Opcodes.ASTORE, info));
 
-        MethodNode newMethodNode = new MethodNode();
-        injectMethod.instructions.remove(injectMethod.instructions.getLast());
-        injectMethod.instructions.remove(injectMethod.instructions.getLast());
-        injectMethod.instructions.accept(newMethodNode);
+        if (!isStatic)
+            list.add(new VarInsnNode(Opcodes.ALOAD, 0));
 
-        InsnList list = this.replaceOwner(newMethodNode.instructions, injectable.getName(), node.name);
-        method.instructions.insertBefore(lastNode, list);
+        for (Type argument : Type.getArgumentTypes(method.desc)) {
+            list.add(new VarInsnNode(argument.getOpcode(Opcodes.ILOAD), slot));
+            slot += argument.getSize();
+        }
+
+        list.add(new VarInsnNode(Opcodes.ALOAD, info));
+        list.add(new MethodInsnNode(isStatic ? Opcodes.INVOKESTATIC : Opcodes.INVOKESPECIAL, context.getNode().name, hook.name, hook.desc,
+                (context.getNode().access & Opcodes.ACC_INTERFACE) != 0));
+
+        if (returnType != Type.VOID_TYPE)
+            list.add(new VarInsnNode(returnType.getOpcode(Opcodes.ISTORE), result));
+
+        list.add(new VarInsnNode(Opcodes.ALOAD, info));
+        list.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, CALLBACK_INFO, "isCancelled", "()Z", false));
+        list.add(new JumpInsnNode(Opcodes.IFEQ, proceed));
+
+        if (returnType != Type.VOID_TYPE)
+            list.add(new VarInsnNode(returnType.getOpcode(Opcodes.ILOAD), result));
+
+        list.add(new InsnNode(returnType.getOpcode(Opcodes.IRETURN)));
+        list.add(proceed);
+
+        method.instructions.insert(list);
+        method.maxLocals = result + returnType.getSize();
+        context.markModified(method);
     }
 
-    private void precise(ClassNode node, Class<? extends Injectable> injectable, Inject inject, MethodNode method, MethodNode injectMethod) {
+    /**
+     * Copies the injection method in the target as a private method, static if it is, and replaces each matched
+     * instruction with a call to it. An instance hook needs <code>this</code> under the operands, which are kept in locals meanwhile.
+     */
+    private void redirect(TransformContext context, MethodNode method, InjectMethod injectMethod) {
         if (method == null) {
-            System.out.println("Inject - Target method not found for PRECISE: " + injectMethod.name);
+            System.out.println("Inject - Target method not found for REDIRECT: " + injectMethod.getTargetName());
             return;
         }
 
-        Precise[] precise = inject.precise();
-        Precise firstPrecise = precise[0];
+        boolean isStatic = (injectMethod.getMethod().access & Opcodes.ACC_STATIC) != 0;
 
-        if (firstPrecise == null) {
-            System.out.println("Inject - PRECISE not found in annotations: " + injectMethod.name);
+        if (!isStatic && (method.access & Opcodes.ACC_STATIC) != 0) {
+            System.out.println("Inject - REDIRECT from a static method needs a static injection method: " + injectMethod.getName());
             return;
         }
 
-        Iterator<AbstractInsnNode> iterator = method.instructions.iterator();
-        boolean found = false;
+        String owner = context.getNode().name;
+        boolean isInterface = (context.getNode().access & Opcodes.ACC_INTERFACE) != 0;
+        MethodNode hook = null;
 
-        while (iterator.hasNext()) {
-            AbstractInsnNode insn = iterator.next();
+        for (InjectPrecise precise : injectMethod.getPrecise()) {
+            if (precise.getType() != PreciseType.METHOD && precise.getType() != PreciseType.FIELD_GET && precise.getType() != PreciseType.FIELD_PUT) {
+                System.out.println("Inject - REDIRECT only applies to METHOD, FIELD_GET and FIELD_PUT locations: " + injectMethod.getName());
+                continue;
+            }
 
-            if (firstPrecise.type().equals(PreciseType.METHOD) && insn instanceof MethodInsnNode) {
-                MethodInsnNode methodInsn = (MethodInsnNode) insn;
+            for (AbstractInsnNode insn : this.findLocations(context, method, injectMethod, precise)) {
+                Type[] operands = this.getOperands(method, insn, false);
+                Type[] results = this.getOperands(method, insn, true);
+                String desc = Type.getMethodDescriptor(results.length > 0 ? results[0] : Type.VOID_TYPE, operands);
 
-                if (methodInsn.name.equals(firstPrecise.name())) {
-                    MethodNode newMethodNode = new MethodNode();
-                    injectMethod.instructions.remove(injectMethod.instructions.getLast());
-                    injectMethod.instructions.remove(injectMethod.instructions.getLast());
-                    injectMethod.instructions.accept(newMethodNode);
+                if ((insn instanceof MethodInsnNode && ((MethodInsnNode) insn).name.equals("<init>")) || !desc.equals(injectMethod.getDesc())) {
+                    System.out.println("Inject - REDIRECT of an instruction taking " + desc + " by " + injectMethod.getName() + injectMethod.getDesc());
+                    continue;
+                }
 
-                    InsnList list = this.replaceOwner(newMethodNode.instructions, injectable.getName(), node.name);
-                    method.instructions.insertBefore(methodInsn, list);
-                    found = true;
-                    break;
+                if (hook == null) {
+                    hook = this.copyMethod(injectMethod, Opcodes.ACC_PRIVATE | (isStatic ? Opcodes.ACC_STATIC : 0), this.getHookName(context, "redirect$", injectMethod));
+                    context.addMethod(hook);
+                }
+
+                InsnList call = new InsnList();
+
+                if (!isStatic) {
+                    int[] slots = new int[operands.length];
+
+                    for (int i = 0; i < operands.length; i++) {
+                        slots[i] = method.maxLocals;
+                        method.maxLocals += operands[i].getSize();
+                    }
+
+                    for (int i = operands.length - 1; i >= 0; i--)
+                        call.add(new VarInsnNode(operands[i].getOpcode(Opcodes.ISTORE), slots[i]));
+
+                    call.add(new VarInsnNode(Opcodes.ALOAD, 0));
+
+                    for (int i = 0; i < operands.length; i++)
+                        call.add(new VarInsnNode(operands[i].getOpcode(Opcodes.ILOAD), slots[i]));
                 }
+
+                call.add(new MethodInsnNode(isStatic ? Opcodes.INVOKESTATIC : Opcodes.INVOKESPECIAL, owner, hook.name, hook.desc, isInterface));
+
+                method.instructions.insertBefore(insn, call);
+                method.instructions.remove(insn);
+                context.getInstructions(method).remove(insn);
+                context.markModified(method);
             }
         }
-
-        if(!found)
-            System.out.println("Inject - PRECISE location not found for method: " + injectMethod.name);
     }
 
-    private void replace(ClassNode node, Class<? extends Injectable> injectable, MethodNode method, MethodNode injectMethod) {
-        if (method == null) {
-            System.out.println("Inject - Target method not found for REPLACE: " + injectMethod.name);
-            return;
-        }
+    /**
+     * @return a name for the copy of the injection method in the target, not used by any method of the target yet
+     */
+    private String getHookName(TransformContext context, String prefix, InjectMethod injectMethod) {
+        String name = prefix + injectMethod.getName();
 
-        node.methods.remove(method);
+        for (int i = 1; context.getMethod(name, injectMethod.getDesc()) != null; i++)
+            name = prefix + injectMethod.getName() + "$" + i;
 
-        this.createMethod(node, injectable, injectMethod);
+        return name;
     }
 
-    private void createMethod(ClassNode node, Class<? extends Injectable> injectable, MethodNode injectMethodNode) {
+    private void createMethod(TransformContext context, InjectMethod injectMethod) {
+        context.addMethod(this.copyMethod(injectMethod, injectMethod.getMethod().access, injectMethod.getTargetName()));
+    }
+
+    private MethodNode copyMethod(InjectMethod injectMethod, int access, String name) {
+        MethodNode injectMethodNode = injectMethod.getMethod();
         MethodNode newMethodNode = new MethodNode(
-                injectMethodNode.access,
-                injectMethodNode.name,
+                access,
+                name,
                 injectMethodNode.desc,
                 injectMethodNode.signature,
                 injectMethodNode.exceptions.toArray(new String[0])
         );
 
-        InsnList list = this.replaceOwner(injectMethodNode.instructions, injectable.getName(), node.name);
+        InjectTemplate.Stamp stamp = injectMethod.getTemplate().stampBody();
+        newMethodNode.instructions.add(this.createProbes(injectMethod));
+        newMethodNode.instructions.add(stamp.getInstructions());
+        newMethodNode.tryCatchBlocks.addAll(stamp.getTryCatchBlocks());
+        newMethodNode.localVariables = stamp.getLocalVariables();
+        newMethodNode.maxLocals = stamp.getMaxLocals();
+
+        return newMethodNode;
+    }
+
+    /**
+     * @return the calls reporting each run of the injection method to the runtime, put at the start of its woven code.
+     * Empty unless the options allow them and a probe is enabled, see {@link HookRegistry}.
+     */
+    private InsnList createProbes(InjectMethod injectMethod) {
+        InsnList probes = new InsnList();
+        HookRegistry hooks = this.options.isProbes() ? HookRegistry.getInstance() : null;
+
+        if (hooks == null)
+            return probes;
+
+        Hook hook = hooks.register(injectMethod);
+
+        if (hooks.isCounting()) {
+            probes.add(new LdcInsnNode(hook.getId()));
+            probes.add(new MethodInsnNode(Opcodes.INVOKESTATIC, HOOK_REGISTRY, "increment", "(I)V", false));
+        }
+
+        if (hooks.isSampling()) {
+            probes.add(new LdcInsnNode(hook.getId()));
+            probes.add(new MethodInsnNode(Opcodes.INVOKESTATIC, INJECT_EVENTS, "hook", "(I)V", false));
+        }
 
-        newMethodNode.instructions.insert(list);
-        node.methods.add(newMethodNode);
+        return probes;
     }
 
-    private InsnList replaceOwner(InsnList list, String injectOwner, String targetOwner) {
-        Iterator<AbstractInsnNode> iterator = list.iterator();
+    /**
+     * Only reads the methods targeted by an injection into a tree, every other method is passed down untouched.
+     * Created methods and hooks are added to the node of the context, and written at the end of the class.
+     * Replacing methods are written in place of their target.
+     */
+    private class MethodsVisitor extends ClassVisitor {
+
+        private final TransformContext context;
+        private final InjectClass injectClass;
+        private final Map<String, List<InjectMethod>> injections = new HashMap<String, List<InjectMethod>>();
+        private final Set<MethodNode> written = Collections.newSetFromMap(new IdentityHashMap<MethodNode, Boolean>());
+
+        public MethodsVisitor(ClassVisitor next, TransformContext context, InjectClass injectClass) {
+            super(Opcodes.ASM9, next);
+            this.context = context;
+            this.injectClass = injectClass;
+
+            for (InjectMethod injectMethod : injectClass.getInjectMethods())
+                if (injectMethod.getType() != InjectType.CREATE)
+                    this.injections.computeIfAbsent(this.getKey(injectMethod), key -> new ArrayList<InjectMethod>()).add(injectMethod);
+        }
+
+        /**
+         * @return the name and descriptor of the target, the visitor is only used when every target has a descriptor
+         */
+        private String getKey(InjectMethod injectMethod) {
+            return injectMethod.getTargetName() + injectMethod.getTargetDesc();
+        }
 
-        while (iterator.hasNext()) {
-            AbstractInsnNode next = iterator.next();
-            String injectableName = injectOwner.replace(".", "/");
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            List<InjectMethod> methodInjections = this.injections.remove(name + descriptor);
 
-            if(next instanceof FieldInsnNode) {
-                FieldInsnNode fieldNext = (FieldInsnNode) next;
+            if (methodInjections == null)
+                return super.visitMethod(access, name, descriptor, signature, exceptions);
 
-                if (fieldNext.owner.equals(injectableName))
-                    fieldNext.owner = targetOwner;
-                else if (fieldNext.owner.contains("$")) {
-                    String[] owners = fieldNext.owner.split("\\$");
-                    String firstOwner = owners[0];
-                    String secondOwner = owners[1];
+            return new MethodNode(Opcodes.ASM9, access, name, descriptor, signature, exceptions) {
 
-                    if (firstOwner.equals(injectableName))
-                        fieldNext.owner = targetOwner + "$" + secondOwner;
+                @Override
+                public void visitEnd() {
+                    MethodNode method = this;
+
+                    for (InjectMethod injectMethod : methodInjections) {
+                        MethodsLoader.this.apply(MethodsVisitor.this.context, MethodsVisitor.this.injectClass, injectMethod, method);
+
+                        // The next injections apply to the replacing method, as they would with the tree
+                        if (injectMethod.getType() == InjectType.REPLACE)
+                            method = MethodsVisitor.this.context.getMethod(name, descriptor);
+                    }
+
+                    if (method != this)
+                        MethodsVisitor.this.written.add(method);
+
+                    method.accept(MethodsVisitor.this.cv);
                 }
-            } else if(next instanceof MethodInsnNode) {
-                MethodInsnNode methodNext = (MethodInsnNode) next;
+            };
+        }
 
-                if (methodNext.owner.equals(injectableName))
-                    methodNext.owner = targetOwner;
+        @Override
+        public void visitEnd() {
+            for (InjectMethod injectMethod : this.injectClass.getInjectMethods()) {
+                // Injections still there did not find their method, they report it like they do with the tree
+                if (injectMethod.getType() == InjectType.CREATE || this.injections.containsKey(this.getKey(injectMethod)))
+                    MethodsLoader.this.apply(this.context, this.injectClass, injectMethod, null);
             }
-        }
 
-        return list;
+            for (MethodNode method : this.context.getNode().methods)
+                if (!this.written.contains(method))
+                    method.accept(this.cv);
+
+            super.visitEnd();
+        }
     }
 }
-
@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.metrics;
+
+/**
+ * Costs of a single class going through a transformer. Only the thread transforming
+ * the class updates it, it is published to {@link TransformMetrics} once done, where
+ * the transforms of a class by the same loader are added up.
+ */
+public class ClassMetrics {
+
+    private final String className;
+    private final String loader;
+    private int transforms = 1;
+    private long parseNanos;
+    private long weaveNanos;
+    private long writeNanos;
+    private long allocatedBytes;
+    private int commonSuperClassCalls;
+    private int resourceLoads;
+    private int injections;
+    private boolean failed;
+
+    public ClassMetrics(String className, ClassLoader loader) {
+        this.className = className;
+        // Only described, a metrics entry must not keep the loader alive
+        this.loader = loader != null ? loader.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(loader)) : "bootstrap";
+    }
+
+    public void addParseNanos(long nanos) {
+        this.parseNanos += nanos;
+    }
+
+    public void addWeaveNanos(long nanos) {
+        this.weaveNanos += nanos;
+    }
+
+    public void addWriteNanos(long nanos) {
+        this.writeNanos += nanos;
+    }
+
+    void addAllocatedBytes(long bytes) {
+        this.allocatedBytes += bytes;
+    }
+
+    public void addCommonSuperClassCall() {
+        this.commonSuperClassCalls++;
+    }
+
+    public void addResourceLoad() {
+        this.resourceLoads++;
+    }
+
+    public void addInjection() {
+        this.injections++;
+    }
+
+    public void setFailed() {
+        this.failed = true;
+    }
+
+    /**
+     * Adds the costs of another transform of the same class to these ones.
+     */
+    ClassMetrics add(ClassMetrics other) {
+        this.parseNanos += other.parseNanos;
+        this.weaveNanos += other.weaveNanos;
+        this.writeNanos += other.writeNanos;
+        this.allocatedBytes += other.allocatedBytes;
+        this.commonSuperClassCalls += other.commonSuperClassCalls;
+        this.resourceLoads += other.resourceLoads;
+        this.injections += other.injections;
+        this.transforms += other.transforms;
+        this.failed |= other.failed;
+
+        return this;
+    }
+
+    public String getClassName() {
+        return this.className;
+    }
+
+    /**
+     * @return the class loader defining the class, as its class name and identity hash
+     */
+    public String getLoader() {
+        return this.loader;
+    }
+
+    /**
+     * @return the number of times the class went through a transformer, e.g. once more on each hot reload
+     */
+    public int getTransforms() {
+        return this.transforms;
+    }
+
+    public long getParseNanos() {
+        return this.parseNanos;
+    }
+
+    public long getWeaveNanos() {
+        return this.weaveNanos;
+    }
+
+    public long getWriteNanos() {
+        return this.writeNanos;
+    }
+
+    public long getTotalNanos() {
+        return this.parseNanos + this.weaveNanos + this.writeNanos;
+    }
+
+    /**
+     * @return the bytes allocated by the transforming thread, or 0 if the JVM cannot measure it
+     */
+    public long getAllocatedBytes() {
+        return this.allocatedBytes;
+    }
+
+    public int getCommonSuperClassCalls() {
+        return this.commonSuperClassCalls;
+    }
+
+    public int getResourceLoads() {
+        return this.resourceLoads;
+    }
+
+    public int getInjections() {
+        return this.injections;
+    }
+
+    public boolean isFailed() {
+        return this.failed;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.metrics;
+
+import com.pvphall.inject.InjectMethod;
+import com.pvphall.inject.jfr.InjectEvents;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gives an id to each hook woven with probes, which the woven code passes to the runtime to find it back.
+ * The ids only hold for the current run, woven classes are not cached while the registry is enabled.
+ *
+ * Enabled when any probe is: the sampled events of {@link InjectEvents#isHookSampling()}, or the call counters
+ * enabled by the <code>inject.counters</code> system property, read with {@link #snapshot(HookSnapshot)}.
+ */
+public class HookRegistry {
+
+    private static final HookRegistry instance = create();
+
+    private final long start = System.nanoTime();
+    private final boolean sampling;
+    private final boolean counting;
+    private final Map<String, Hook> hooksByName = new HashMap<String, Hook>();
+    // Replaced on each registration, the probes read it without any lock
+    private volatile Hook[] hooks = new Hook[0];
+    // Each thread only increments its own counters, the ones of ended threads are folded into the retired totals
+    private final ThreadLocal<Counters> counters = ThreadLocal.withInitial(this::createCounters);
+    private final List<Counters> allCounters = new CopyOnWriteArrayList<Counters>();
+    private long[] retiredCalls = new long[0];
+
+    public HookRegistry(boolean sampling, boolean counting) {
+        this.sampling = sampling;
+        this.counting = counting;
+    }
+
+    private static HookRegistry create() {
+        boolean sampling = InjectEvents.isHookSampling();
+        boolean counting = Boolean.getBoolean("inject.counters");
+
+        return sampling || counting ? new HookRegistry(sampling, counting) : null;
+    }
+
+    /**
+     * @return the hook of the injection method, registered on its first call. Weaving it again, in another
+     * class loader or after a reload, gives back the same hook.
+     */
+    public synchronized Hook register(InjectMethod injectMethod) {
+        String name = injectMethod.getOwner().replace('/', '.') + "." + injectMethod.getName() + injectMethod.getDesc();
+        Hook hook = this.hooksByName.get(name);
+
+        if (hook == null) {
+            Hook[] hooks = Arrays.copyOf(this.hooks, this.hooks.length + 1);
+            hook = new Hook(this.hooks.length, name, injectMethod.getType());
+            hooks[hook.getId()] = hook;
+
+            this.hooksByName.put(name, hook);
+            this.hooks = hooks;
+        }
+
+        return hook;
+    }
+
+    public Hook getHook(int id) {
+        return this.hooks[id];
+    }
+
+    public List<Hook> getHooks() {
+        return Collections.unmodifiableList(Arrays.asList(this.hooks));
+    }
+
+    /**
+     * @return the number of runs of every hook, with their rate since the previous snapshot
+     * @param previous the snapshot the rates are measured from, or null to measure them since the registry was created
+     */
+    public HookSnapshot snapshot(HookSnapshot previous) {
+        long now = System.nanoTime();
+        long interval = now - (previous != null ? previous.getTime() : this.start);
+        List<HookSnapshot.Entry> entries = new ArrayList<HookSnapshot.Entry>();
+
+        Hook[] hooks = this.hooks;
+        long[] totals = this.sumCalls(hooks.length);
+
+        for (Hook hook : hooks) {
+            long calls = totals[hook.getId()];
+            long delta = calls - (previous != null ? previous.getCalls(hook) : 0);
+
+            entries.add(new HookSnapshot.Entry(hook, calls, delta, interval > 0 ? delta * (double) TimeUnit.SECONDS.toNanos(1) / interval : 0));
+        }
+
+        // Hottest hooks first, they are the ones worth looking at
+        entries.sort((first, second) -> Long.compare(second.getDelta(), first.getDelta()));
+
+        return new HookSnapshot(now, interval, entries);
+    }
+
+    /**
+     * @return true if the hooks are woven with a call to {@link InjectEvents#hook(int)}
+     */
+    public boolean isSampling() {
+        return this.sampling;
+    }
+
+    /**
+     * @return true if the hooks are woven with a call to {@link #increment(int)}
+     */
+    public boolean isCounting() {
+        return this.counting;
+    }
+
+    /**
+     * Called by the woven hooks when the counters are enabled.
+     *
+     * @param id the id of the hook which runs
+     */
+    public static void increment(int id) {
+        instance.count(id);
+    }
+
+    /**
+     * Counts a run of the hook on the counters of the current thread.
+     */
+    public void count(int id) {
+        long[] values = this.counters.get().values;
+
+        if (id >= values.length)
+            values = this.counters.get().grow(id);
+
+        values[id]++;
+    }
+
+    /**
+     * Read while the other threads may still increment their counters, each count is at most a few runs behind.
+     */
+    private synchronized long[] sumCalls(int length) {
+        this.retireCounters();
+
+        long[] totals = Arrays.copyOf(this.retiredCalls, length);
+
+        for (Counters counters : this.allCounters) {
+            long[] values = counters.values;
+
+            for (int i = 0; i < Math.min(values.length, totals.length); i++)
+                totals[i] += values[i];
+        }
+
+        return totals;
+    }
+
+    /**
+     * Adds the counters of the ended threads to the retired totals, so that threads coming and going do not
+     * keep their counters. An ended thread never counts again, its last runs are all seen once it is not alive.
+     */
+    private synchronized void retireCounters() {
+        for (Counters counters : this.allCounters) {
+            Thread thread = counters.thread.get();
+
+            if (thread != null && thread.isAlive())
+                continue;
+
+            long[] values = counters.values;
+
+            if (values.length > this.retiredCalls.length)
+                this.retiredCalls = Arrays.copyOf(this.retiredCalls, values.length);
+
+            for (int i = 0; i < values.length; i++)
+                this.retiredCalls[i] += values[i];
+
+            this.allCounters.remove(counters);
+        }
+    }
+
+    private Counters createCounters() {
+        this.retireCounters();
+
+        Counters counters = new Counters(Thread.currentThread(), Math.max(16, this.hooks.length));
+        this.allCounters.add(counters);
+
+        return counters;
+    }
+
+    /**
+     * @return the registry, or null if no probe is enabled
+     */
+    public static HookRegistry getInstance() {
+        return instance;
+    }
+
+    private static class Counters {
+
+        private final WeakReference<Thread> thread;
+        // Only written by its thread, other threads read it for the snapshots
+        private volatile long[] values;
+
+        private Counters(Thread thread, int size) {
+            this.thread = new WeakReference<Thread>(thread);
+            this.values = new long[size];
+        }
+
+        private long[] grow(int id) {
+            this.values = Arrays.copyOf(this.values, Math.max(id + 1, this.values.length * 2));
+
+            return this.values;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Number of runs of each hook at a point in time, see {@link HookRegistry#snapshot(HookSnapshot)}.
+ */
+public class HookSnapshot {
+
+    private final long time;
+    private final long intervalNanos;
+    private final List<Entry> entries;
+    private final Map<Hook, Long> calls = new HashMap<Hook, Long>();
+
+    public HookSnapshot(long time, long intervalNanos, List<Entry> entries) {
+        this.time = time;
+        this.intervalNanos = intervalNanos;
+        this.entries = Collections.unmodifiableList(entries);
+
+        for (Entry entry : entries)
+            this.calls.put(entry.getHook(), entry.getCalls());
+    }
+
+    /**
+     * @return the value of {@link System#nanoTime()} when the snapshot was taken
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return the time covered by the rates, since the previous snapshot
+     */
+    public long getIntervalNanos() {
+        return this.intervalNanos;
+    }
+
+    /**
+     * @return the hooks, the ones which ran the most during the interval first
+     */
+    public List<Entry> getEntries() {
+        return this.entries;
+    }
+
+    public long getCalls(Hook hook) {
+        Long calls = this.calls.get(hook);
+
+        return calls != null ? calls : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        for (Entry entry : this.entries)
+            builder.append(String.format("%12d %12.1f/s  %s%n", entry.getCalls(), entry.getRate(), entry.getHook()));
+
+        return builder.toString();
+    }
+
+    public static class Entry {
+
+        private final Hook hook;
+        private final long calls;
+        private final long delta;
+        private final double rate;
+
+        public Entry(Hook hook, long calls, long delta, double rate) {
+            this.hook = hook;
+            this.calls = calls;
+            this.delta = delta;
+            this.rate = rate;
+        }
+
+        public Hook getHook() {
+            return this.hook;
+        }
+
+        /**
+         * @return the runs of the hook since it was woven
+         */
+        public long getCalls() {
+            return this.calls;
+        }
+
+        /**
+         * @return the runs of the hook during the interval of the snapshot
+         */
+        public long getDelta() {
+            return this.delta;
+        }
+
+        /**
+         * @return the runs per second during the interval of the snapshot
+         */
+        public double getRate() {
+            return this.rate;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.metrics;
+
+import com.google.gson.GsonBuilder;
+import com.pvphall.inject.InjectType;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records where the transformers spend their time: parsing, weaving and writing each class,
+ * the hierarchy lookups made while computing frames, and the time taken by each inject type.
+ *
+ * Enabled with the <code>inject.metrics</code> system property. The metrics are exposed over JMX
+ * and written as JSON at shutdown to <code>inject.metrics.report</code> (inject-metrics.json by default).
+ */
+public class TransformMetrics implements TransformMetricsMXBean {
+
+    private static final TransformMetrics instance = create();
+
+    private final File report;
+    private final Map<String, ClassMetrics> classes = new ConcurrentHashMap<String, ClassMetrics>();
+    private final Map<InjectType, TypeMetrics> types = new EnumMap<InjectType, TypeMetrics>(InjectType.class);
+    // Loading a class while computing frames may transform it on the same thread, before the outer class ends
+    private final ThreadLocal<Deque<ClassMetrics>> current = ThreadLocal.withInitial(ArrayDeque::new);
+    private final com.sun.management.ThreadMXBean allocations = getAllocationsBean();
+
+    public TransformMetrics(File report) {
+        this.report = report;
+
+        // Filled once, the map is only read after this
+        for (InjectType type : InjectType.values())
+            this.types.put(type, new TypeMetrics());
+    }
+
+    private static TransformMetrics create() {
+        if (!Boolean.getBoolean("inject.metrics"))
+            return null;
+
+        TransformMetrics metrics = new TransformMetrics(new File(System.getProperty("inject.metrics.report", "inject-metrics.json")));
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("com.pvphall.inject:type=TransformMetrics"));
+        } catch (JMException e) {
+            System.out.println("Inject - Could not register the metrics MBean");
+            e.printStackTrace();
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(metrics::writeReport, "Inject metrics writer"));
+
+        return metrics;
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationsBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+            if (bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled())
+                return (com.sun.management.ThreadMXBean) bean;
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // Not a HotSpot based JVM, allocations are not measured
+        }
+
+        return null;
+    }
+
+    /**
+     * Starts measuring a class on the current thread, until {@link #end(ClassMetrics)} is called.
+     * A class transformed meanwhile on the same thread is measured on its own, then the outer class is measured again.
+     */
+    public ClassMetrics begin(String className, ClassLoader loader) {
+        ClassMetrics metrics = new ClassMetrics(className, loader);
+
+        if (this.allocations != null)
+            metrics.addAllocatedBytes(-this.allocations.getThreadAllocatedBytes(Thread.currentThread().getId()));
+
+        this.current.get().push(metrics);
+
+        return metrics;
+    }
+
+    public void end(ClassMetrics metrics) {
+        Deque<ClassMetrics> stack = this.current.get();
+        stack.remove(metrics);
+
+        if (stack.isEmpty())
+            this.current.remove();
+
+        if (this.allocations != null)
+            metrics.addAllocatedBytes(this.allocations.getThreadAllocatedBytes(Thread.currentThread().getId()));
+
+        // The same name may be defined by several loaders, or transformed again by the same one
+        this.classes.merge(metrics.getLoader() + "/" + metrics.getClassName(), metrics, ClassMetrics::add);
+    }
+
+    public void recordInjection(InjectType type, long nanos) {
+        TypeMetrics metrics = this.types.get(type);
+        metrics.count.increment();
+        metrics.nanos.add(nanos);
+
+        ClassMetrics classMetrics = this.current.get().peek();
+
+        if (classMetrics != null)
+            classMetrics.addInjection();
+    }
+
+    /**
+     * @return the metrics of the classes, keyed by the loader defining them followed by their name
+     */
+    public Map<String, ClassMetrics> getClasses() {
+        return Collections.unmodifiableMap(this.classes);
+    }
+
+    @Override
+    public int getClassCount() {
+        return this.classes.size();
+    }
+
+    @Override
+    public int getFailedClassCount() {
+        int count = 0;
+
+        for (ClassMetrics metrics : this.classes.values())
+            if (metrics.isFailed())
+                count++;
+
+        return count;
+    }
+
+    @Override
+    public long getParseMillis() {
+        long nanos = 0;
+
+        for (ClassMetrics metrics : this.classes.values())
+            nanos += metrics.getParseNanos();
+
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public long getWeaveMillis() {
+        long nanos = 0;
+
+        for (ClassMetrics metrics : this.classes.values())
+            nanos += metrics.getWeaveNanos();
+
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public long getWriteMillis() {
+        long nanos = 0;
+
+        for (ClassMetrics metrics : this.classes.values())
+            nanos += metrics.getWriteNanos();
+
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        long bytes = 0;
+
+        for (ClassMetrics metrics : this.classes.values())
+            bytes += metrics.getAllocatedBytes();
+
+        return bytes;
+    }
+
+    @Override
+    public long getCommonSuperClassCalls() {
+        long calls = 0;
+
+        for (ClassMetrics metrics : this.classes.values())
+            calls += metrics.getCommonSuperClassCalls();
+
+        return calls;
+    }
+
+    @Override
+    public long getResourceLoads() {
+        long loads = 0;
+
+        for (ClassMetrics metrics : this.classes.values())
+            loads += metrics.getResourceLoads();
+
+        return loads;
+    }
+
+    @Override
+    public Map<String, Long> getInjectTypeMillis() {
+        Map<String, Long> millis = new LinkedHashMap<String, Long>();
+
+        for (Map.Entry<InjectType, TypeMetrics> entry : this.types.entrySet())
+            millis.put(entry.getKey().name(), TimeUnit.NANOSECONDS.toMillis(entry.getValue().nanos.sum()));
+
+        return millis;
+    }
+
+    @Override
+    public Map<String, Long> getInjectTypeCounts() {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+
+        for (Map.Entry<InjectType, TypeMetrics> entry : this.types.entrySet())
+            counts.put(entry.getKey().name(), entry.getValue().count.sum());
+
+        return counts;
+    }
+
+    @Override
+    public String getReport() {
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("classCount", this.getClassCount());
+        report.put("failedClassCount", this.getFailedClassCount());
+        report.put("parseMillis", this.getParseMillis());
+        report.put("weaveMillis", this.getWeaveMillis());
+        report.put("writeMillis", this.getWriteMillis());
+        report.put("allocatedBytes", this.getAllocatedBytes());
+        report.put("commonSuperClassCalls", this.getCommonSuperClassCalls());
+        report.put("resourceLoads", this.getResourceLoads());
+        report.put("injectTypeMillis", this.getInjectTypeMillis());
+        report.put("injectTypeCounts", this.getInjectTypeCounts());
+
+        // Most expensive classes first, they are the ones worth looking at
+        List<ClassMetrics> classes = new ArrayList<ClassMetrics>(this.classes.values());
+        classes.sort((first, second) -> Long.compare(second.getTotalNanos(), first.getTotalNanos()));
+        report.put("classes", classes);
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(report);
+    }
+
+    @Override
+    public void writeReport() {
+        File parent = this.report.getAbsoluteFile().getParentFile();
+
+        try {
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs())
+                throw new IOException("Cannot create directory " + parent);
+
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(this.report), StandardCharsets.UTF_8)) {
+                writer.write(this.getReport());
+            }
+        } catch (IOException e) {
+            System.out.println("Inject - Could not write metrics report: " + this.report);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the metrics, or null if they are not enabled
+     */
+    public static TransformMetrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the metrics of the class being transformed by the current thread, or null if there is none
+     */
+    public static ClassMetrics current() {
+        return instance != null ? instance.current.get().peek() : null;
+    }
+
+    private static class TypeMetrics {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+    }
+}
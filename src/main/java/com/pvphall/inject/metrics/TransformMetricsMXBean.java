@@ -0,0 +1,66 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link TransformMetrics}, registered as <code>com.pvphall.inject:type=TransformMetrics</code>.
+ */
+public interface TransformMetricsMXBean {
+
+    int getClassCount();
+
+    int getFailedClassCount();
+
+    long getParseMillis();
+
+    long getWeaveMillis();
+
+    long getWriteMillis();
+
+    long getAllocatedBytes();
+
+    long getCommonSuperClassCalls();
+
+    long getResourceLoads();
+
+    /**
+     * @return the time spent applying each inject type, in milliseconds
+     */
+    Map<String, Long> getInjectTypeMillis();
+
+    /**
+     * @return the number of injections applied for each inject type
+     */
+    Map<String, Long> getInjectTypeCounts();
+
+    /**
+     * @return the full report, as written at shutdown
+     */
+    String getReport();
+
+    void writeReport();
+}
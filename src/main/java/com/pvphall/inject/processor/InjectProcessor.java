@@ -0,0 +1,252 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.processor;
+
+import com.pvphall.inject.InjectPrecise;
+import com.pvphall.inject.InjectType;
+import com.pvphall.inject.annotations.Inject;
+import com.pvphall.inject.annotations.Injectable;
+import com.pvphall.inject.annotations.Precise;
+import com.pvphall.inject.annotations.PreciseShift;
+import com.pvphall.inject.annotations.PreciseType;
+import com.pvphall.inject.config.Manifest;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generates {@link Manifest#RESOURCE} from the {@link Injectable} classes of the compilation, and reports
+ * injections which cannot apply to their target as compilation errors. An incremental compilation only
+ * sees the classes it recompiles, the entries of the other injection classes still there are kept.
+ *
+ * Targets missing from the compile classpath are reported as warnings instead when the
+ * <code>inject.lenient</code> option is set.
+ */
+@SupportedAnnotationTypes("com.pvphall.inject.annotations.Injectable")
+@SupportedOptions("inject.lenient")
+public class InjectProcessor extends AbstractProcessor {
+
+    private final Map<String, Manifest.Entry> entries = new TreeMap<String, Manifest.Entry>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(Injectable.class))
+            if (element instanceof TypeElement)
+                this.processClass((TypeElement) element);
+
+        if (roundEnv.processingOver() && !this.entries.isEmpty())
+            this.writeManifest();
+
+        return false;
+    }
+
+    private void processClass(TypeElement type) {
+        String name = this.processingEnv.getElementUtils().getBinaryName(type).toString();
+        String target = type.getAnnotation(Injectable.class).target();
+        TypeElement targetType = this.processingEnv.getElementUtils().getTypeElement(target.replace("$", "."));
+
+        if (targetType == null) {
+            boolean lenient = Boolean.parseBoolean(this.processingEnv.getOptions().get("inject.lenient"));
+            this.processingEnv.getMessager().printMessage(lenient ? Diagnostic.Kind.WARNING : Diagnostic.Kind.ERROR, "Inject target not found: " + target, type);
+        }
+
+        List<Manifest.MethodEntry> methods = new ArrayList<Manifest.MethodEntry>();
+
+        for (Element member : type.getEnclosedElements()) {
+            Inject inject = member.getAnnotation(Inject.class);
+
+            if (inject == null || member.getKind() != ElementKind.METHOD)
+                continue;
+
+            ExecutableElement method = (ExecutableElement) member;
+            String methodName = method.getSimpleName().toString();
+            String methodDesc = this.getDescriptor(method);
+
+            String targetMethod = inject.method();
+            int descStart = targetMethod.indexOf('(');
+            String targetName = targetMethod.isEmpty() ? methodName : descStart != -1 ? targetMethod.substring(0, descStart) : targetMethod;
+            String targetDesc = descStart != -1 ? targetMethod.substring(descStart) : inject.type().getTargetDesc(methodDesc);
+
+            if (inject.type() == InjectType.CALLBACK && targetName.equals("<init>"))
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "CALLBACK injection cannot target a constructor, it would return before the super constructor is called", method);
+            else if (inject.type() == InjectType.CALLBACK && methodDesc.equals(inject.type().getTargetDesc(methodDesc)))
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "CALLBACK injection without a CallbackInfo as last parameter", method);
+            else if (inject.type() == InjectType.CALLBACK && !inject.type().getTargetDesc(methodDesc).equals(targetDesc))
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "CALLBACK injection must take the parameters of its target " + targetDesc + " and return the same type", method);
+            else if (targetType != null)
+                this.checkTarget(method, inject.type(), targetType, targetName, targetDesc);
+
+            List<InjectPrecise> precise = new ArrayList<InjectPrecise>();
+
+            for (Precise current : inject.precise()) {
+                if (current.type() == PreciseType.RETURN && current.shift() == PreciseShift.AFTER)
+                    this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "PRECISE RETURN cannot be shifted after", method);
+
+                if (inject.type() == InjectType.REDIRECT && current.type() != PreciseType.METHOD && current.type() != PreciseType.FIELD_GET && current.type() != PreciseType.FIELD_PUT)
+                    this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "REDIRECT only applies to METHOD, FIELD_GET and FIELD_PUT locations", method);
+
+                precise.add(new InjectPrecise(current.type(), current.name(), current.owner(), current.desc(), current.ordinal(), current.shift()));
+            }
+
+            if ((inject.type() == InjectType.PRECISE || inject.type() == InjectType.REDIRECT) && precise.isEmpty())
+                this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, inject.type() + " injection without any @Precise", method);
+
+            methods.add(new Manifest.MethodEntry(methodName, methodDesc, inject.type(), precise, targetMethod));
+        }
+
+        this.entries.put(name, new Manifest.Entry(name, target, methods));
+    }
+
+    private void checkTarget(ExecutableElement method, InjectType type, TypeElement targetType, String methodName, String methodDesc) {
+        int matches = 0;
+
+        // Constructors are named <init> and static initializers <clinit>, as in the class files
+        for (Element member : targetType.getEnclosedElements())
+            if ((member.getKind() == ElementKind.METHOD || member.getKind() == ElementKind.CONSTRUCTOR || member.getKind() == ElementKind.STATIC_INIT)
+                    && member.getSimpleName().contentEquals(methodName)
+                    && (methodDesc == null || this.getDescriptor((ExecutableElement) member).equals(methodDesc)))
+                matches++;
+
+        // Compilers do not list static initializers among the members, one may be there without being seen
+        if (matches == 0 && methodName.equals("<clinit>"))
+            return;
+
+        boolean found = matches > 0;
+
+        if (methodDesc == null && matches > 1)
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, type + " injection of an overloaded method in " + targetType + ", add the descriptor of the target to method: " + methodName, method);
+        else if (type == InjectType.CREATE && found)
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "CREATE injection of a method already in " + targetType, method);
+        else if (type != InjectType.CREATE && !found)
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, type + " injection of a method not found in " + targetType + ": " + methodName + (methodDesc != null ? methodDesc : ""), method);
+    }
+
+    private void writeManifest() {
+        try {
+            // The previous manifest is read through the file being created, the filer refuses to open one file twice
+            FileObject resource = this.processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", Manifest.RESOURCE);
+            Map<String, Manifest.Entry> entries = this.readManifest(resource);
+            entries.putAll(this.entries);
+
+            try (OutputStream outputStream = resource.openOutputStream()) {
+                new Manifest(new ArrayList<Manifest.Entry>(entries.values())).write(outputStream);
+            }
+        } catch (IOException e) {
+            this.processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Could not write " + Manifest.RESOURCE + ": " + e);
+        }
+    }
+
+    /**
+     * @return the entries of the manifest of a previous compilation whose class is still an injection class
+     */
+    private Map<String, Manifest.Entry> readManifest(FileObject resource) {
+        Map<String, Manifest.Entry> entries = new TreeMap<String, Manifest.Entry>();
+        Manifest manifest;
+
+        try {
+            manifest = Manifest.read(Files.readAllBytes(Paths.get(resource.toUri())));
+        } catch (IOException | IllegalArgumentException | FileSystemNotFoundException e) {
+            // No previous compilation, an output outside of the file system, or an unreadable manifest written again from scratch
+            return entries;
+        }
+
+        for (Manifest.Entry entry : manifest.getEntries()) {
+            TypeElement type = this.processingEnv.getElementUtils().getTypeElement(entry.getName().replace('$', '.'));
+
+            if (type != null && type.getAnnotation(Injectable.class) != null)
+                entries.put(entry.getName(), entry);
+        }
+
+        return entries;
+    }
+
+    private String getDescriptor(ExecutableElement method) {
+        StringBuilder builder = new StringBuilder("(");
+
+        for (VariableElement parameter : method.getParameters())
+            this.appendDescriptor(builder, parameter.asType());
+
+        this.appendDescriptor(builder.append(')'), method.getReturnType());
+
+        return builder.toString();
+    }
+
+    private void appendDescriptor(StringBuilder builder, TypeMirror type) {
+        TypeMirror erasure = this.processingEnv.getTypeUtils().erasure(type);
+
+        switch (erasure.getKind()) {
+            case BOOLEAN: builder.append('Z'); break;
+            case BYTE: builder.append('B'); break;
+            case CHAR: builder.append('C'); break;
+            case SHORT: builder.append('S'); break;
+            case INT: builder.append('I'); break;
+            case LONG: builder.append('J'); break;
+            case FLOAT: builder.append('F'); break;
+            case DOUBLE: builder.append('D'); break;
+            case VOID: builder.append('V'); break;
+            case ARRAY:
+                this.appendDescriptor(builder.append('['), ((ArrayType) erasure).getComponentType());
+                break;
+            case DECLARED:
+                TypeElement element = (TypeElement) ((DeclaredType) erasure).asElement();
+                String binaryName = this.processingEnv.getElementUtils().getBinaryName(element).toString();
+                builder.append('L').append(binaryName.replace('.', '/')).append(';');
+                break;
+            default:
+                // Unresolved types end up here, the descriptor could not match any method anyway
+                builder.append("Ljava/lang/Object;");
+                break;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.reload;
+
+import com.pvphall.inject.InjectClass;
+import com.pvphall.inject.Injects;
+import com.pvphall.inject.Streams;
+import com.pvphall.inject.api.backends.Backends;
+import com.pvphall.inject.api.backends.IBackend;
+import com.pvphall.inject.config.Manifest;
+import com.pvphall.inject.config.WeaveOptions;
+import com.pvphall.inject.transformers.InjectTransformer;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.ProtectionDomain;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a directory of compiled injection classes, and weaves their targets again when they change.
+ *
+ * Targets are woven again with the new injection classes read from the directory, from the bytes their loader
+ * defined them with, recorded as they are loaded while the agent weaves them. Loaders defining classes already woven,
+ * such as LaunchWrapper's, and targets of injection classes added since, are woven from the class file their loader
+ * reads instead. The JVM then swaps the bodies of their methods, without restarting the game: injections adding
+ * or removing methods or fields of a loaded class still need a restart.
+ */
+public class HotReload implements ClassFileTransformer {
+
+    // Files written by a single compilation are reloaded together
+    private static final long QUIET_PERIOD = 200;
+    private static final String CONFIG = "injects.json";
+
+    private final Instrumentation instrumentation;
+    private final Path directory;
+    private final boolean recordDefinedBytes;
+    // Read by every class being loaded, classes use the identity of Object for their hash code
+    private final Map<Class<?>, byte[]> woven = new ConcurrentHashMap<Class<?>, byte[]>();
+    // Bytes of the targets by name, for each loader defining them, until the loader is collected
+    private final Map<ClassLoader, Map<String, byte[]>> definedBytes = Collections.synchronizedMap(new WeakHashMap<ClassLoader, Map<String, byte[]>>());
+    // Only ever replaced as a whole, read by every class being loaded
+    private volatile Set<String> targets = Collections.emptySet();
+    private final Set<String> injections = new HashSet<String>();
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+
+    public HotReload(Instrumentation instrumentation, Path directory) {
+        this(instrumentation, directory, false);
+    }
+
+    /**
+     * @param recordDefinedBytes whether the targets are defined without being woven, as when the agent weaves them,
+     *                           so their bytes are recorded to weave them again
+     */
+    public HotReload(Instrumentation instrumentation, Path directory, boolean recordDefinedBytes) {
+        this.instrumentation = instrumentation;
+        this.directory = directory;
+        this.recordDefinedBytes = recordDefinedBytes;
+    }
+
+    public void start() {
+        this.install();
+
+        Thread thread = new Thread(this::watch, "Inject Reload");
+        thread.setDaemon(true);
+        thread.start();
+
+        System.out.println("Inject - Hot reload watching " + this.directory.toAbsolutePath());
+    }
+
+    /**
+     * Registers the transformers, the one recording the targets first so that it runs before the agent weaves them.
+     */
+    void install() {
+        Injects injects = Injects.getInstance();
+
+        if (injects.getConfig() != null && injects.getConfig().getInjects() != null)
+            this.addTargets(this.readTargets(injects.getConfig().getInjects()));
+
+        if (this.recordDefinedBytes)
+            this.instrumentation.addTransformer(new Recorder());
+
+        this.instrumentation.addTransformer(this, true);
+    }
+
+    private void watch() {
+        try (WatchService watchService = this.directory.getFileSystem().newWatchService()) {
+            this.register(watchService, this.directory);
+
+            while (true) {
+                Set<Path> changed = new LinkedHashSet<Path>();
+                WatchKey key = watchService.take();
+
+                while (key != null) {
+                    this.collect(watchService, key, changed);
+                    key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+                }
+
+                this.reload(changed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("Inject - Hot reload stopped watching " + this.directory);
+            e.printStackTrace();
+        }
+    }
+
+    private void register(WatchService watchService, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                HotReload.this.watchedDirectories.put(key, directory);
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void collect(WatchService watchService, WatchKey key, Set<Path> changed) throws IOException {
+        Path parent = this.watchedDirectories.get(key);
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || parent == null)
+                continue;
+
+            Path path = parent.resolve((Path) event.context());
+
+            // Packages created by the compilation are watched as well
+            if (Files.isDirectory(path))
+                this.register(watchService, path);
+            else
+                changed.add(path);
+        }
+
+        if (!key.reset())
+            this.watchedDirectories.remove(key);
+    }
+
+    /**
+     * Weaves the targets of the changed injection classes, then retransforms them all at once.
+     */
+    synchronized void reload(Set<Path> changed) {
+        Injects injects = Injects.getInstance();
+        Path manifest = this.directory.resolve(Manifest.RESOURCE);
+        Path config = this.directory.resolve(CONFIG);
+
+        // The annotation processor writes the manifest again along with the classes
+        if (changed.contains(manifest))
+            this.loadConfig(manifest, injects::loadManifest);
+        else if (changed.contains(config))
+            this.loadConfig(config, injects::loadConfig);
+
+        if (injects.getConfig() == null || injects.getConfig().getInjects() == null) {
+            System.out.println("Inject - Hot reload needs injects.json or " + Manifest.RESOURCE + " on the class path");
+            return;
+        }
+
+        Set<String> classNames = new LinkedHashSet<String>();
+
+        for (Path path : changed) {
+            String className = this.getClassName(path);
+
+            if (className != null && injects.isInjectClass(className))
+                classNames.add(className);
+        }
+
+        // Injection classes added since are only listed once their configuration is written, maybe after them
+        for (String className : injects.getConfig().getInjects())
+            if (!this.injections.contains(className))
+                classNames.add(className);
+
+        Set<String> targets = this.readTargets(classNames);
+
+        if (targets.isEmpty())
+            return;
+
+        this.addTargets(targets);
+
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        Map<ClassLoader, InjectTransformer> transformers = new HashMap<ClassLoader, InjectTransformer>();
+        // Only the game's transformers share the injection classes, the cache would hold the previous weaving
+        WeaveOptions options = WeaveOptions.fromProperties().setEager(false).setCache(false).setShared(false);
+
+        for (Class<?> loadedClass : this.instrumentation.getAllLoadedClasses()) {
+            if (!targets.contains(loadedClass.getName()) || loadedClass.getClassLoader() == null)
+                continue;
+
+            InjectTransformer transformer = transformers.computeIfAbsent(loadedClass.getClassLoader(),
+                    loader -> new InjectTransformer(new DirectoryClassLoader(this.directory, loader), options));
+
+            byte[] bytes = this.getDefinedBytes(loadedClass);
+            byte[] wovenBytes = bytes != null ? transformer.transform(loadedClass.getName(), loadedClass.getName(), bytes, loadedClass.getClassLoader()) : null;
+
+            if (wovenBytes == null || wovenBytes == bytes) {
+                System.out.println("Inject - Could not weave " + loadedClass.getName() + " again, it is left as is");
+                continue;
+            }
+
+            this.woven.put(loadedClass, wovenBytes);
+            classes.add(loadedClass);
+        }
+
+        try {
+            if (!classes.isEmpty())
+                this.instrumentation.retransformClasses(classes.toArray(new Class<?>[0]));
+
+            System.out.println("Inject - Reloaded " + classes);
+        } catch (UnmodifiableClassException | UnsupportedOperationException e) {
+            System.out.println("Inject - Could not reload " + classes + ", only method bodies can change without a restart");
+            e.printStackTrace();
+        } finally {
+            this.woven.clear();
+        }
+    }
+
+    private void loadConfig(Path path, Consumer<InputStream> loader) {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            loader.accept(inputStream);
+        } catch (IOException e) {
+            System.out.println("Inject - Could not reload " + path);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the targets of the injection classes found in the directory
+     */
+    private Set<String> readTargets(Collection<String> classNames) {
+        Set<String> targets = new HashSet<String>();
+
+        for (String className : classNames) {
+            Path path = this.directory.resolve(className.replace(".", this.directory.getFileSystem().getSeparator()) + ".class");
+
+            if (!Files.isRegularFile(path))
+                continue;
+
+            try {
+                ClassNode node = new ClassNode();
+                new ClassReader(Files.readAllBytes(path)).accept(node, ClassReader.SKIP_CODE);
+
+                String target = new InjectClass(node).getTarget();
+                this.injections.add(className);
+
+                if (target != null)
+                    targets.add(target);
+            } catch (IOException e) {
+                System.out.println("Inject - Could not read " + path);
+                e.printStackTrace();
+            }
+        }
+
+        return targets;
+    }
+
+    private void addTargets(Set<String> targets) {
+        Set<String> allTargets = new HashSet<String>(this.targets);
+        allTargets.addAll(targets);
+
+        this.targets = Collections.unmodifiableSet(allTargets);
+    }
+
+    /**
+     * Hands the woven bytes to the JVM while the targets are retransformed, every other class is left untouched.
+     */
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                         ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        return classBeingRedefined != null ? this.woven.get(classBeingRedefined) : null;
+    }
+
+    private byte[] getDefinedBytes(Class<?> loadedClass) {
+        Map<String, byte[]> classes = this.definedBytes.get(loadedClass.getClassLoader());
+        byte[] bytes = classes != null ? classes.get(loadedClass.getName()) : null;
+
+        return bytes != null ? bytes : this.readOriginal(loadedClass);
+    }
+
+    private byte[] readOriginal(Class<?> loadedClass) {
+        IBackend backend = Backends.getBackend();
+        String resource = (backend != null ? backend.untransformName(loadedClass.getName()) : loadedClass.getName()).replace('.', '/') + ".class";
+
+        try (InputStream inputStream = loadedClass.getClassLoader().getResourceAsStream(resource)) {
+            if (inputStream == null)
+                return null;
+
+            return Streams.readFully(inputStream);
+        } catch (IOException e) {
+            System.out.println("Inject - Could not read " + resource);
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the binary name of a compiled class of the directory, or null if the file is not one
+     */
+    private String getClassName(Path path) {
+        String relative = this.directory.relativize(path).toString();
+
+        if (!relative.endsWith(".class"))
+            return null;
+
+        return relative.substring(0, relative.length() - ".class".length()).replace(path.getFileSystem().getSeparator(), ".");
+    }
+
+    /**
+     * Records the bytes of the targets as they are defined. Registered without retransformation, before the agent,
+     * it sees them before they are woven: transformers able to retransform only run after the others.
+     */
+    private class Recorder implements ClassFileTransformer {
+
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            if (loader == null || className == null || classBeingRedefined != null)
+                return null;
+
+            String name = className.replace('/', '.');
+
+            if (HotReload.this.targets.contains(name))
+                HotReload.this.definedBytes.computeIfAbsent(loader, key -> new ConcurrentHashMap<String, byte[]>()).put(name, classfileBuffer);
+
+            return null;
+        }
+    }
+
+    /**
+     * Reads classes from the watched directory first, so the new injection classes are used even when the directory
+     * is not on the class path of the game, and from the class loader of the targets otherwise.
+     */
+    private static class DirectoryClassLoader extends ClassLoader {
+
+        private final Path directory;
+
+        public DirectoryClassLoader(Path directory, ClassLoader parent) {
+            super(parent);
+            this.directory = directory;
+        }
+
+        @Override
+        public InputStream getResourceAsStream(String name) {
+            Path path = this.directory.resolve(name);
+
+            try {
+                if (Files.isRegularFile(path))
+                    return Files.newInputStream(path);
+            } catch (IOException e) {
+                System.out.println("Inject - Could not read " + path);
+            }
+
+            return super.getResourceAsStream(name);
+        }
+    }
+}
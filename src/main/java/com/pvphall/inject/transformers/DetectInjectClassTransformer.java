@@ -21,22 +21,23 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
-
 package com.pvphall.inject.transformers;
 
-import com.pvphall.inject.Injects;
-import com.pvphall.inject.api.transformers.AbstractClassTransformer;
-import com.pvphall.inject.loaders.InjectionsLoader;
-import org.objectweb.asm.tree.ClassNode;
+import net.minecraft.launchwrapper.IClassTransformer;
 
-public class DetectInjectClassTransformer extends AbstractClassTransformer {
+/**
+ * LaunchWrapper entry of {@link DetectInjectTransformer}, registered by name in the <code>LaunchClassLoader</code>.
+ */
+public class DetectInjectClassTransformer extends DetectInjectTransformer implements IClassTransformer {
 
-    private final Injects injects = Injects.getInstance();
+    public DetectInjectClassTransformer() {
+        super();
+    }
 
-    @Override
-    public void transform(ClassNode node, String className) {
-        if (this.injects.getConfig().getInjects().contains(className))
-            this.injects.addInjectClass(className, node);
+    /**
+     * @param classLoader the class loader of the injection classes, or null for the LaunchWrapper one
+     */
+    public DetectInjectClassTransformer(ClassLoader classLoader) {
+        super(classLoader);
     }
 }
-
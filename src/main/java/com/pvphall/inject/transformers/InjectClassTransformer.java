@@ -21,25 +21,23 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
-
 package com.pvphall.inject.transformers;
 
-import com.pvphall.inject.api.transformers.AbstractClassTransformer;
-import com.pvphall.inject.loaders.InjectionsLoader;
-import org.objectweb.asm.tree.ClassNode;
-
-public class InjectClassTransformer extends AbstractClassTransformer {
+import net.minecraft.launchwrapper.IClassTransformer;
 
-    private InjectionsLoader injectionsLoader;
+/**
+ * LaunchWrapper entry of {@link InjectTransformer}, registered by name in the <code>LaunchClassLoader</code>.
+ */
+public class InjectClassTransformer extends InjectTransformer implements IClassTransformer {
 
     public InjectClassTransformer() {
-        this.injectionsLoader = new InjectionsLoader();
-        this.injectionsLoader.registerInjectionClasses();
+        super();
     }
 
-    @Override
-    public void transform(ClassNode node, String className) {
-        this.injectionsLoader.transform(node, className);
+    /**
+     * @param classLoader the class loader of the injection and target classes, or null for the LaunchWrapper one
+     */
+    public InjectClassTransformer(ClassLoader classLoader) {
+        super(classLoader);
     }
 }
-
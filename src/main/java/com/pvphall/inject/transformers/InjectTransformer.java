@@ -0,0 +1,142 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.transformers;
+
+import com.pvphall.inject.api.transformers.AbstractClassTransformer;
+import com.pvphall.inject.api.transformers.TransformContext;
+import com.pvphall.inject.cache.TransformCache;
+import com.pvphall.inject.config.WeaveOptions;
+import com.pvphall.inject.loaders.InjectionsLoader;
+import com.pvphall.inject.metrics.HookRegistry;
+import com.pvphall.inject.verify.ClassVerifier;
+import org.objectweb.asm.ClassVisitor;
+
+/**
+ * Weaves the injection classes into their targets, whichever backend loads them.
+ *
+ * @see InjectClassTransformer
+ */
+public class InjectTransformer extends AbstractClassTransformer {
+
+    private final ClassLoader classLoader;
+    private final WeaveOptions options;
+    private InjectionsLoader injectionsLoader;
+
+    public InjectTransformer() {
+        this(null);
+    }
+
+    /**
+     * @param classLoader the class loader of the injection and target classes, or null for the one of the backend
+     */
+    public InjectTransformer(ClassLoader classLoader) {
+        this(classLoader, WeaveOptions.fromProperties());
+    }
+
+    /**
+     * @param classLoader the class loader of the injection and target classes, or null for the one of the backend
+     * @param options the runtime features to use, none of them when weaving outside of the game
+     */
+    public InjectTransformer(ClassLoader classLoader, WeaveOptions options) {
+        this.classLoader = classLoader;
+        this.options = options;
+        this.injectionsLoader = new InjectionsLoader(classLoader != null ? classLoader : InjectionsLoader.class.getClassLoader(), options);
+        this.injectionsLoader.registerInjectionClasses();
+
+        if (options.isEager())
+            this.preWeave();
+    }
+
+    /**
+     * Weaves every target in parallel while the game goes on starting, so that loading them later hands
+     * back their woven bytes instead of weaving them one after the other. Targets loaded before their
+     * worker is done are woven as usual, the transformer never waits for the workers.
+     */
+    private void preWeave() {
+        int parallelism = this.options.getEagerThreads();
+        long start = System.nanoTime();
+
+        this.preTransform(this.injectionsLoader.getTargets(), parallelism).whenComplete((result, throwable) ->
+                System.out.println("Inject - Pre-woven " + this.injectionsLoader.getTargets().size() + " classes in "
+                        + (System.nanoTime() - start) / 1000000 + "ms on " + parallelism + " threads"));
+    }
+
+    @Override
+    public byte[] transform(String name, String transformedName, byte[] bytes, ClassLoader loader) {
+        this.injectionsLoader.registerInjectionClasses(loader);
+
+        return super.transform(name, transformedName, bytes, loader);
+    }
+
+    @Override
+    public boolean shouldTransform(String className) {
+        return this.injectionsLoader.hasInjection(className);
+    }
+
+    @Override
+    public void transform(TransformContext context) {
+        this.injectionsLoader.transform(context);
+    }
+
+    @Override
+    protected boolean isStreaming() {
+        return this.options.isStreaming();
+    }
+
+    @Override
+    protected ClassVisitor visitor(ClassVisitor next, TransformContext context) {
+        return this.injectionsLoader.visitor(next, context);
+    }
+
+    @Override
+    protected ClassLoader getClassLoader() {
+        return this.classLoader != null ? this.classLoader : super.getClassLoader();
+    }
+
+    @Override
+    protected TransformCache getCache() {
+        // Woven probes hold ids of the hook registry, which only hold for this run
+        if (!this.options.isCache() || (this.options.isProbes() && HookRegistry.getInstance() != null))
+            return null;
+
+        return TransformCache.getInstance();
+    }
+
+    @Override
+    protected boolean isMeasured() {
+        return this.options.isMetrics();
+    }
+
+    @Override
+    protected ClassVerifier getVerifier() {
+        return this.options.isVerify() ? ClassVerifier.getInstance() : null;
+    }
+
+    @Override
+    protected byte[] getCacheSalt(String className) {
+        return this.injectionsLoader.getCacheSalt(className);
+    }
+}
+
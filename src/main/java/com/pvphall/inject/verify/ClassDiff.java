@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.verify;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.Textifier;
+import org.objectweb.asm.util.TraceMethodVisitor;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Textual diff of the methods changed by weaving a class, in the format of a unified diff of their ASM listing.
+ */
+public class ClassDiff {
+
+    // Past this many lines compared, a method is listed whole before and after rather than diffed
+    private static final long MAX_CELLS = 4_000_000L;
+
+    private ClassDiff() {
+    }
+
+    /**
+     * @return the diff of every method added, removed or changed between the two versions of the class
+     */
+    public static String diff(byte[] original, byte[] transformed) {
+        Map<String, List<String>> before = list(original);
+        Map<String, List<String>> after = list(transformed);
+        StringBuilder builder = new StringBuilder();
+
+        for (Map.Entry<String, List<String>> entry : before.entrySet()) {
+            List<String> lines = after.get(entry.getKey());
+
+            if (lines == null)
+                append(builder, entry.getKey(), entry.getValue(), new ArrayList<String>());
+            else if (!lines.equals(entry.getValue()))
+                append(builder, entry.getKey(), entry.getValue(), lines);
+        }
+
+        for (Map.Entry<String, List<String>> entry : after.entrySet())
+            if (!before.containsKey(entry.getKey()))
+                append(builder, entry.getKey(), new ArrayList<String>(), entry.getValue());
+
+        return builder.toString();
+    }
+
+    /**
+     * @return the listing of each method of the class, by name and descriptor
+     */
+    private static Map<String, List<String>> list(byte[] bytes) {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, ClassReader.SKIP_FRAMES);
+
+        Map<String, List<String>> methods = new LinkedHashMap<String, List<String>>();
+
+        for (MethodNode method : node.methods) {
+            Textifier textifier = new Textifier();
+            method.accept(new TraceMethodVisitor(textifier));
+
+            StringWriter writer = new StringWriter();
+            textifier.print(new PrintWriter(writer));
+
+            methods.put(method.name + method.desc, Arrays.asList(writer.toString().split("\n")));
+        }
+
+        return methods;
+    }
+
+    private static void append(StringBuilder builder, String method, List<String> before, List<String> after) {
+        builder.append("--- ").append(method).append('\n');
+        builder.append("+++ ").append(method).append('\n');
+
+        if ((long) before.size() * after.size() > MAX_CELLS) {
+            for (String line : before)
+                builder.append('-').append(line).append('\n');
+
+            for (String line : after)
+                builder.append('+').append(line).append('\n');
+
+            return;
+        }
+
+        // Longest common subsequence of the lines, read from the start to give the diff in order
+        int[][] lengths = new int[before.size() + 1][after.size() + 1];
+
+        for (int i = before.size() - 1; i >= 0; i--)
+            for (int j = after.size() - 1; j >= 0; j--)
+                lengths[i][j] = before.get(i).equals(after.get(j)) ? lengths[i + 1][j + 1] + 1 : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+
+        int i = 0;
+        int j = 0;
+
+        while (i < before.size() || j < after.size()) {
+            if (i < before.size() && j < after.size() && before.get(i).equals(after.get(j))) {
+                builder.append(' ').append(before.get(i++)).append('\n');
+                j++;
+            } else if (j < after.size() && (i == before.size() || lengths[i][j + 1] >= lengths[i + 1][j])) {
+                builder.append('+').append(after.get(j++)).append('\n');
+            } else {
+                builder.append('-').append(before.get(i++)).append('\n');
+            }
+        }
+    }
+}
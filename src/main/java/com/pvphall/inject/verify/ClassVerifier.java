@@ -0,0 +1,210 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.verify;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.util.CheckClassAdapter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks the woven classes with ASM, before the JVM finds out about a broken one with a VerifyError
+ * the first time a hot path reaches it.
+ *
+ * Enabled with the <code>inject.verify</code> system property:
+ * <ul>
+ *     <li><code>sync</code> verifies each class before it is defined, a class failing it is defined from its original bytes</li>
+ *     <li><code>async</code> verifies them on a background thread, failures can then only be reported</li>
+ * </ul>
+ * When <code>inject.verify.dump</code> points to a directory, the diff of the methods changed in each woven class is
+ * written there, as <code>&lt;class name&gt;.diff</code>, starting with the verification errors if any.
+ */
+public class ClassVerifier {
+
+    private static final ClassVerifier instance = create();
+
+    private final boolean async;
+    private final File dumpDirectory;
+    private final ExecutorService executor;
+
+    public ClassVerifier(boolean async, File dumpDirectory) {
+        this.async = async;
+        this.dumpDirectory = dumpDirectory;
+        this.executor = async ? Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Inject verifier");
+            thread.setDaemon(true);
+
+            return thread;
+        }) : null;
+    }
+
+    private static ClassVerifier create() {
+        String mode = System.getProperty("inject.verify");
+
+        if (mode == null || mode.isEmpty())
+            return null;
+
+        if (!mode.equals("sync") && !mode.equals("async")) {
+            System.out.println("Inject - Unknown verification mode " + mode + ", expected sync or async");
+            return null;
+        }
+
+        String dump = System.getProperty("inject.verify.dump");
+
+        return new ClassVerifier(mode.equals("async"), dump != null && !dump.isEmpty() ? new File(dump) : null);
+    }
+
+    /**
+     * @param loader the class loader used to read the hierarchy of the types in the class
+     * @param onFailure run when the transformed class fails the verification, possibly later on another thread
+     * @return the bytes to define: the transformed ones, or the original ones if they failed a synchronous verification
+     */
+    public byte[] verify(String className, byte[] original, byte[] transformed, ClassLoader loader, Runnable onFailure) {
+        if (this.async) {
+            this.executor.execute(() -> {
+                if (!this.check(className, original, transformed, loader))
+                    onFailure.run();
+            });
+
+            return transformed;
+        }
+
+        if (this.check(className, original, transformed, loader))
+            return transformed;
+
+        onFailure.run();
+
+        return original;
+    }
+
+    /**
+     * @return true if the transformed class passed the verification
+     */
+    private boolean check(String className, byte[] original, byte[] transformed, ClassLoader loader) {
+        List<String> errors;
+
+        try {
+            errors = this.getErrors(transformed, loader != null ? loader : ClassLoader.getSystemClassLoader());
+        } catch (RuntimeException e) {
+            System.out.println("Inject - Could not verify " + className);
+            e.printStackTrace();
+            return true;
+        }
+
+        if (!errors.isEmpty()) {
+            System.out.println("Inject - Woven class " + className + " failed verification"
+                    + (this.async ? "" : ", its original bytes are used instead") + ":");
+
+            for (String error : errors)
+                System.out.println("Inject -   " + error);
+        }
+
+        if (this.dumpDirectory != null)
+            this.dump(className, original, transformed, errors);
+
+        return errors.isEmpty();
+    }
+
+    /**
+     * @return the errors found in the class, empty if there is none
+     */
+    public List<String> getErrors(byte[] bytes, ClassLoader loader) {
+        List<String> errors = new ArrayList<String>();
+        ClassReader reader = new ClassReader(bytes);
+
+        // Structure of the class and of each instruction, the data flow is checked below without loading any class
+        try {
+            reader.accept(new CheckClassAdapter(null, false), 0);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            errors.add(e.getMessage());
+            return errors;
+        }
+
+        ClassNode node = new ClassNode();
+        reader.accept(node, ClassReader.SKIP_DEBUG);
+
+        List<Type> interfaces = new ArrayList<Type>();
+
+        for (String name : node.interfaces)
+            interfaces.add(Type.getObjectType(name));
+
+        Type superClass = node.superName != null ? Type.getObjectType(node.superName) : null;
+        boolean isInterface = (node.access & Opcodes.ACC_INTERFACE) != 0;
+
+        for (MethodNode method : node.methods) {
+            HierarchyVerifier verifier = new HierarchyVerifier(Type.getObjectType(node.name), superClass, interfaces, isInterface, loader);
+
+            try {
+                new Analyzer<BasicValue>(verifier).analyze(node.name, method);
+            } catch (AnalyzerException e) {
+                errors.add(method.name + method.desc + ": " + e.getMessage());
+            }
+        }
+
+        return errors;
+    }
+
+    private void dump(String className, byte[] original, byte[] transformed, List<String> errors) {
+        File file = new File(this.dumpDirectory, className + ".diff");
+
+        try {
+            if (!this.dumpDirectory.isDirectory() && !this.dumpDirectory.mkdirs())
+                throw new IOException("Cannot create directory " + this.dumpDirectory);
+
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                for (String error : errors)
+                    writer.write("! " + error + "\n");
+
+                writer.write(ClassDiff.diff(original, transformed));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Inject - Could not write the diff of " + className + ": " + file);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the verifier, or null if the woven classes are not verified
+     */
+    public static ClassVerifier getInstance() {
+        return instance;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.verify;
+
+import com.pvphall.inject.ClassHierarchy;
+import com.pvphall.inject.ClassInfo;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.analysis.BasicValue;
+import org.objectweb.asm.tree.analysis.SimpleVerifier;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A SimpleVerifier reading the hierarchy from the class headers of {@link ClassHierarchy},
+ * without loading the classes it checks like the default one does.
+ *
+ * As the JVM does, any object is assignable to an interface. A class which cannot be read is
+ * assumed to be assignable, only the woven code is under test, not the class path.
+ */
+class HierarchyVerifier extends SimpleVerifier {
+
+    private static final Type OBJECT_TYPE = Type.getObjectType("java/lang/Object");
+    private static final Type NULL_TYPE = Type.getObjectType("null");
+
+    private final Type currentClass;
+    private final Type currentSuperClass;
+    private final boolean currentIsInterface;
+    private final ClassLoader loader;
+    private final ClassHierarchy hierarchy;
+
+    HierarchyVerifier(Type currentClass, Type currentSuperClass, List<Type> currentInterfaces, boolean isInterface, ClassLoader loader) {
+        super(Opcodes.ASM9, currentClass, currentSuperClass, currentInterfaces, isInterface);
+        this.currentClass = currentClass;
+        this.currentSuperClass = currentSuperClass;
+        this.currentIsInterface = isInterface;
+        this.loader = loader;
+        this.hierarchy = ClassHierarchy.getInstance(loader);
+    }
+
+    @Override
+    protected boolean isSubTypeOf(BasicValue value, BasicValue expected) {
+        Type expectedType = expected.getType();
+        Type type = value.getType();
+
+        switch (expectedType.getSort()) {
+            case Type.INT:
+            case Type.FLOAT:
+            case Type.LONG:
+            case Type.DOUBLE:
+                return type.equals(expectedType);
+            case Type.ARRAY:
+            case Type.OBJECT:
+                if (type.equals(NULL_TYPE))
+                    return true;
+
+                return (type.getSort() == Type.OBJECT || type.getSort() == Type.ARRAY) && this.isAssignableFrom(expectedType, type);
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    @Override
+    protected boolean isInterface(Type type) {
+        if (type.equals(this.currentClass))
+            return this.currentIsInterface;
+
+        ClassInfo info = this.getInfo(type);
+
+        return info != null && (info.getAccess() & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    @Override
+    protected Type getSuperClass(Type type) {
+        if (type.equals(this.currentClass))
+            return this.currentSuperClass;
+
+        if (type.getSort() == Type.ARRAY)
+            return OBJECT_TYPE;
+
+        ClassInfo info = this.getInfo(type);
+
+        if (info == null)
+            return type.equals(OBJECT_TYPE) ? null : OBJECT_TYPE;
+
+        return info.getSuperName() != null ? Type.getObjectType(info.getSuperName()) : null;
+    }
+
+    @Override
+    protected boolean isAssignableFrom(Type type1, Type type2) {
+        if (type1.equals(type2) || type2.equals(NULL_TYPE))
+            return true;
+
+        if (type1.getSort() == Type.ARRAY) {
+            if (type2.getSort() != Type.ARRAY)
+                return false;
+
+            Type element1 = Type.getType(type1.getDescriptor().substring(1));
+            Type element2 = Type.getType(type2.getDescriptor().substring(1));
+
+            if (element1.getSort() < Type.ARRAY || element2.getSort() < Type.ARRAY)
+                return element1.equals(element2);
+
+            return this.isAssignableFrom(element1, element2);
+        }
+
+        if (type1.equals(OBJECT_TYPE) || this.isInterface(type1))
+            return true;
+
+        if (type2.getSort() == Type.ARRAY)
+            return false;
+
+        for (Type type = type2; type != null; type = this.getSuperClass(type)) {
+            if (type.equals(type1))
+                return true;
+
+            if (!type.equals(this.currentClass) && this.getInfo(type) == null)
+                return true;
+        }
+
+        return false;
+    }
+
+    private ClassInfo getInfo(Type type) {
+        try {
+            return this.hierarchy.getInfo(type.getInternalName(), this.loader);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClassHierarchyTest {
+
+    /**
+     * Two loaders defining other classes under the same names never see each other's hierarchy.
+     */
+    @Test
+    public void keepsHierarchyPerLoader() {
+        ClassLoader first = this.createLoader("Base");
+        ClassLoader second = this.createLoader("Other");
+
+        assertEquals("fixtures/Base", new SafeClassWriter(null, first, 0).getCommonSuperClass("fixtures/Left", "fixtures/Right"));
+        assertEquals("fixtures/Other", new SafeClassWriter(null, second, 0).getCommonSuperClass("fixtures/Left", "fixtures/Right"));
+    }
+
+    private ClassLoader createLoader(String base) {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("fixtures." + base, "package fixtures; public class " + base + " {}");
+        sources.put("fixtures.Left", "package fixtures; public class Left extends " + base + " {}");
+        sources.put("fixtures.Right", "package fixtures; public class Right extends " + base + " {}");
+
+        return new TestClassLoader(new TestCompiler().compile(sources));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+import com.pvphall.inject.transformers.InjectTransformer;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves compiled test classes as resources, the way LaunchWrapper serves game classes, and defines them once woven.
+ */
+public class TestClassLoader extends ClassLoader {
+
+    private final Map<String, byte[]> classes;
+
+    public TestClassLoader(Map<String, byte[]> classes) {
+        super(TestClassLoader.class.getClassLoader());
+        this.classes = new HashMap<String, byte[]>(classes);
+    }
+
+    /**
+     * Registers the injection classes and weaves the target with a new {@link InjectTransformer}.
+     *
+     * @param target the binary name of the target class
+     * @param injections the binary names of the injection classes
+     * @return the woven target, defined by this loader
+     */
+    public Class<?> weave(String target, String... injections) {
+        loadConfig(injections);
+
+        return this.define(target, new InjectTransformer(this).transform(target, target, this.getBytes(target)));
+    }
+
+    public static void loadConfig(String... injections) {
+        StringBuilder config = new StringBuilder("{\"injects\": [");
+
+        for (int i = 0; i < injections.length; i++)
+            config.append(i > 0 ? ", " : "").append('"').append(injections[i]).append('"');
+
+        Injects.getInstance().loadConfig(new ByteArrayInputStream(config.append("]}").toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public byte[] getBytes(String className) {
+        return this.classes.get(className.replace('.', '/'));
+    }
+
+    @Override
+    public InputStream getResourceAsStream(String name) {
+        if (name.endsWith(".class")) {
+            byte[] bytes = this.classes.get(name.substring(0, name.length() - ".class".length()));
+
+            if (bytes != null)
+                return new ByteArrayInputStream(bytes);
+        }
+
+        return super.getResourceAsStream(name);
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        byte[] bytes = this.getBytes(name);
+
+        if (bytes == null)
+            throw new ClassNotFoundException(name);
+
+        return this.define(name, bytes);
+    }
+
+    public Class<?> define(String name, byte[] bytes) {
+        return this.defineClass(name, bytes, 0, bytes.length);
+    }
+}
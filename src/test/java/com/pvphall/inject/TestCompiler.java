@@ -0,0 +1,183 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Compiles test sources in memory, against the class path of the tests.
+ */
+public class TestCompiler {
+
+    private final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+    private final Map<String, byte[]> resources = new HashMap<String, byte[]>();
+
+    /**
+     * @param sources the sources, by binary name of their class
+     * @param options extra options of javac, annotation processing is off unless they enable it
+     * @return the compiled classes, by internal name
+     */
+    public Map<String, byte[]> compile(Map<String, String> sources, String... options) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager standardManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+        List<JavaFileObject> units = new ArrayList<JavaFileObject>();
+
+        for (Map.Entry<String, String> source : sources.entrySet())
+            units.add(new Source(source.getKey(), source.getValue()));
+
+        List<String> arguments = new ArrayList<String>(Arrays.asList("-classpath", System.getProperty("java.class.path")));
+        arguments.addAll(Arrays.asList(options));
+
+        if (!arguments.contains("-processor"))
+            arguments.add("-proc:none");
+
+        Map<String, byte[]> compiled = new HashMap<String, byte[]>();
+        JavaFileManager manager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardManager) {
+
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                return new Output(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind, bytes -> compiled.put(className.replace('.', '/'), bytes));
+            }
+
+            @Override
+            public FileObject getFileForOutput(Location location, String packageName, String relativeName, FileObject sibling) {
+                String name = packageName.isEmpty() ? relativeName : packageName.replace('.', '/') + "/" + relativeName;
+
+                return new Output(URI.create("mem:///" + name), JavaFileObject.Kind.OTHER, bytes -> TestCompiler.this.resources.put(name, bytes));
+            }
+        };
+
+        this.check(compiler.getTask(null, manager, diagnostics, arguments, null, units).call(), diagnostics);
+        this.classes.putAll(compiled);
+
+        return compiled;
+    }
+
+    /**
+     * Compiles the sources into a directory, with the classes already there on the class path, as an incremental build does.
+     */
+    public void compile(File directory, Map<String, String> sources, String... options) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager manager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+        List<JavaFileObject> units = new ArrayList<JavaFileObject>();
+
+        for (Map.Entry<String, String> source : sources.entrySet())
+            units.add(new Source(source.getKey(), source.getValue()));
+
+        List<String> arguments = new ArrayList<String>(Arrays.asList(
+                "-classpath", System.getProperty("java.class.path") + File.pathSeparator + directory,
+                "-d", directory.getPath()));
+        arguments.addAll(Arrays.asList(options));
+
+        if (!arguments.contains("-processor"))
+            arguments.add("-proc:none");
+
+        this.check(compiler.getTask(null, manager, diagnostics, arguments, null, units).call(), diagnostics);
+    }
+
+    /**
+     * @return every class compiled so far, by internal name
+     */
+    public Map<String, byte[]> getClasses() {
+        return this.classes;
+    }
+
+    /**
+     * @return the resources written by annotation processors, by path
+     */
+    public Map<String, byte[]> getResources() {
+        return this.resources;
+    }
+
+    private void check(boolean success, DiagnosticCollector<JavaFileObject> diagnostics) {
+        if (success)
+            return;
+
+        StringBuilder errors = new StringBuilder();
+
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics())
+            errors.append(diagnostic).append('\n');
+
+        throw new IllegalStateException("Compilation failed:\n" + errors);
+    }
+
+        private static class Source extends SimpleJavaFileObject {
+
+        private final String code;
+
+        private Source(String className, String code) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            this.code = code;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return this.code;
+        }
+    }
+
+    private static class Output extends SimpleJavaFileObject {
+
+        private final Consumer<byte[]> consumer;
+
+        private Output(URI uri, Kind kind, Consumer<byte[]> consumer) {
+            super(uri, kind);
+            this.consumer = consumer;
+        }
+
+        @Override
+        public OutputStream openOutputStream() {
+            return new ByteArrayOutputStream() {
+
+                @Override
+                public void close() {
+                    Output.this.consumer.accept(this.toByteArray());
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.api.transformers;
+
+import com.pvphall.inject.TestClassLoader;
+import com.pvphall.inject.TestCompiler;
+import com.pvphall.inject.api.backends.Backends;
+import com.pvphall.inject.api.backends.IBackend;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class AbstractClassTransformerTest {
+
+    private static final String TARGET = "fixtures.Ordered";
+
+    private static final String TARGET_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class Ordered {\n"
+            + "    public int first() { return 1; }\n"
+            + "    public int second() { return 2; }\n"
+            + "    public int third() { return 3; }\n"
+            + "}\n";
+
+    /**
+     * Methods copied as is and methods written again keep their order, added ones come last.
+     */
+    @Test
+    public void keepsMethodOrder() throws ReflectiveOperationException {
+        AbstractClassTransformer transformer = new AbstractClassTransformer() {
+
+            @Override
+            public void transform(TransformContext context) {
+                MethodNode second = context.getMethod("second", "()I");
+                setBody(second, 5);
+                context.markModified(second);
+
+                MethodNode fourth = new MethodNode(Opcodes.ACC_PUBLIC, "fourth", "()I", null, null);
+                setBody(fourth, 4);
+                context.addMethod(fourth);
+            }
+        };
+
+        TestClassLoader loader = this.createLoader();
+        byte[] bytes = transformer.transform(TARGET, TARGET, loader.getBytes(TARGET), loader);
+
+        assertEquals(Arrays.asList("<init>", "first", "second", "third", "fourth"), getMethodNames(bytes));
+
+        Class<?> ordered = loader.define(TARGET, bytes);
+        Object instance = ordered.getConstructor().newInstance();
+
+        assertEquals(1, ordered.getMethod("first").invoke(instance));
+        assertEquals(5, ordered.getMethod("second").invoke(instance));
+        assertEquals(4, ordered.getMethod("fourth").invoke(instance));
+    }
+
+    /**
+     * Transformers changing the node without reporting it still have every change written.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void writesClassNodeTransformers() throws ReflectiveOperationException {
+        AbstractClassTransformer transformer = new ClassNodeTransformer() {
+
+            @Override
+            public void transform(ClassNode node, String className) {
+                for (MethodNode method : node.methods)
+                    if (method.name.equals("third"))
+                        setBody(method, 7);
+            }
+        };
+
+        TestClassLoader loader = this.createLoader();
+        Class<?> ordered = loader.define(TARGET, transformer.transform(TARGET, TARGET, loader.getBytes(TARGET), loader));
+
+        assertEquals(7, ordered.getMethod("third").invoke(ordered.getConstructor().newInstance()));
+    }
+
+    /**
+     * Class files are read under the name the backend maps the transformed one back to, as with an obfuscated game.
+     */
+    @Test
+    public void preTransformsByUntransformedName() {
+        Map<String, byte[]> classes = new HashMap<String, byte[]>(new TestCompiler().compile(Collections.singletonMap(TARGET, TARGET_SOURCE)));
+        classes.put("a", classes.remove(TARGET.replace('.', '/')));
+
+        TestClassLoader loader = new TestClassLoader(classes);
+        IBackend backend = Backends.getBackend();
+
+        Backends.setBackend(new IBackend() {
+
+            @Override
+            public ClassLoader getClassLoader() {
+                return loader;
+            }
+
+            @Override
+            public String untransformName(String transformedName) {
+                return transformedName.equals(TARGET) ? "a" : transformedName;
+            }
+
+            @Override
+            public void registerTransformers() {
+            }
+        });
+
+        try {
+            AbstractClassTransformer transformer = new AbstractClassTransformer() {
+
+                @Override
+                public void transform(TransformContext context) {
+                    MethodNode second = context.getMethod("second", "()I");
+                    setBody(second, 5);
+                    context.markModified(second);
+                }
+            };
+
+            transformer.preTransform(Collections.singleton(TARGET), 1).join();
+            transformer.transform("a", TARGET, loader.getBytes("a"));
+
+            assertEquals(1, transformer.getPreTransformedClasses());
+        } finally {
+            Backends.setBackend(backend);
+        }
+    }
+
+    private static void setBody(MethodNode method, int value) {
+        method.instructions.clear();
+        method.instructions.add(new IntInsnNode(Opcodes.BIPUSH, value));
+        method.instructions.add(new InsnNode(Opcodes.IRETURN));
+        method.tryCatchBlocks.clear();
+        method.localVariables = null;
+    }
+
+    private static List<String> getMethodNames(byte[] bytes) {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, ClassReader.SKIP_CODE);
+
+        List<String> names = new ArrayList<String>();
+
+        for (MethodNode method : node.methods)
+            names.add(method.name);
+
+        return names;
+    }
+
+    private TestClassLoader createLoader() {
+        return new TestClassLoader(new TestCompiler().compile(Collections.singletonMap(TARGET, TARGET_SOURCE)));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.backends;
+
+import com.pvphall.inject.api.transformers.AbstractClassTransformer;
+import com.pvphall.inject.api.transformers.TransformContext;
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class AgentBackendTest {
+
+    private static final byte[] BYTES = new byte[] { 1 };
+    private static final byte[] WOVEN = new byte[] { 2 };
+
+    /**
+     * Classes of the bootstrap loader and of the JDK never reach the transformers.
+     */
+    @Test
+    public void skipsPlatformClasses() {
+        RecordingTransformer transformer = new RecordingTransformer();
+        AgentBackend backend = new AgentBackend(null, Collections.<AbstractClassTransformer>singletonList(transformer));
+        ClassLoader loader = new URLClassLoader(new URL[0]);
+
+        assertNull(backend.transform(null, "fixtures/Target", null, null, BYTES));
+        assertNull(backend.transform(loader, "java/util/List", null, null, BYTES));
+        assertNull(backend.transform(loader, "jdk/internal/misc/Unsafe", null, null, BYTES));
+        assertNull(backend.transform(loader, "sun/misc/Unsafe", null, null, BYTES));
+        assertEquals(Collections.emptyList(), transformer.names);
+
+        assertSame(WOVEN, backend.transform(loader, "fixtures/Target", null, null, BYTES));
+        assertEquals(Collections.singletonList("fixtures.Target"), transformer.names);
+    }
+
+    /**
+     * A class loaded by a transformer while it weaves another one is left as is.
+     */
+    @Test
+    public void skipsClassesLoadedWhileTransforming() {
+        RecordingTransformer transformer = new RecordingTransformer();
+        AgentBackend backend = new AgentBackend(null, Collections.<AbstractClassTransformer>singletonList(transformer));
+        ClassLoader loader = new URLClassLoader(new URL[0]);
+        transformer.nested = () -> assertNull(backend.transform(loader, "fixtures/Nested", null, null, BYTES));
+
+        assertSame(WOVEN, backend.transform(loader, "fixtures/Target", null, null, BYTES));
+        assertEquals(Collections.singletonList("fixtures.Target"), transformer.names);
+
+        // The guard is cleared once the outer class is done
+        transformer.nested = null;
+        assertSame(WOVEN, backend.transform(loader, "fixtures/Next", null, null, BYTES));
+    }
+
+    private static class RecordingTransformer extends AbstractClassTransformer {
+
+        private final List<String> names = new ArrayList<String>();
+        private Runnable nested;
+
+        @Override
+        public byte[] transform(String name, String transformedName, byte[] bytes, ClassLoader loader) {
+            this.names.add(transformedName);
+
+            if (this.nested != null)
+                this.nested.run();
+
+            return WOVEN;
+        }
+
+        @Override
+        public void transform(TransformContext context) {
+        }
+    }
+}
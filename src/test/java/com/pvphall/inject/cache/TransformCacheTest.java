@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TransformCacheTest {
+
+    private static final byte[] CONFIG_HASH = new byte[32];
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("cache").toFile();
+        this.file = new File(this.directory, "transforms.pack");
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : this.directory.listFiles())
+            child.delete();
+
+        this.directory.delete();
+    }
+
+    /**
+     * Each launch saves its pack while the one it read is still mapped.
+     */
+    @Test
+    public void savesWhileMapped() {
+        TransformCache first = this.load();
+        byte[] used = first.key(new byte[] { 1 }, null);
+        byte[] unused = first.key(new byte[] { 2 }, null);
+        first.put(used, new byte[] { 10, 11 });
+        first.put(unused, new byte[] { 20 });
+        first.save();
+
+        TransformCache second = this.load();
+        assertArrayEquals(new byte[] { 10, 11 }, second.get(used));
+        second.save();
+
+        TransformCache third = this.load();
+        assertArrayEquals(new byte[] { 10, 11 }, third.get(used));
+        assertNull(third.get(unused));
+
+        // Nothing changed, the pack read is kept for the next launch
+        third.save();
+        assertFalse(this.file.exists());
+        assertArrayEquals(new byte[] { 10, 11 }, this.load().get(used));
+    }
+
+    @Test
+    public void forgetsRemovedEntries() {
+        TransformCache first = this.load();
+        byte[] key = first.key(new byte[] { 1 }, null);
+        first.put(key, new byte[] { 10 });
+        first.remove(key);
+        first.save();
+
+        assertNull(this.load().get(key));
+    }
+
+    /**
+     * A packaged library is keyed by the build id of its manifest, without reading the rest of the jar.
+     */
+    @Test
+    public void keysBuildByManifest() throws IOException {
+        byte[] build = TransformCache.readBuild(this.writeJar("first.jar", "1", new byte[] { 1 }));
+
+        assertArrayEquals(build, TransformCache.readBuild(this.writeJar("second.jar", "1", new byte[] { 2 })));
+        assertFalse(Arrays.equals(build, TransformCache.readBuild(this.writeJar("third.jar", "2", new byte[] { 1 }))));
+
+        // Without a build id, the jar is keyed by its size and date
+        File jar = this.writeJar("dev.jar", null, new byte[] { 1 });
+        byte[] devBuild = TransformCache.readBuild(jar);
+
+        assertArrayEquals(devBuild, TransformCache.readBuild(jar));
+        assertTrue(jar.setLastModified(jar.lastModified() - 60000));
+        assertFalse(Arrays.equals(devBuild, TransformCache.readBuild(jar)));
+    }
+
+    private File writeJar(String name, String build, byte[] content) throws IOException {
+        File jar = new File(this.directory, name);
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, "1.0");
+
+        if (build != null)
+            manifest.getMainAttributes().putValue("Inject-Build", build);
+
+        try (JarOutputStream outputStream = new JarOutputStream(new FileOutputStream(jar), manifest)) {
+            outputStream.putNextEntry(new JarEntry("content"));
+            outputStream.write(content);
+            outputStream.closeEntry();
+        }
+
+        return jar;
+    }
+
+    private TransformCache load() {
+        TransformCache cache = new TransformCache(this.file, CONFIG_HASH);
+        cache.load();
+
+        return cache;
+    }
+}
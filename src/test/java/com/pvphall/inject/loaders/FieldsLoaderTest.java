@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.loaders;
+
+import com.pvphall.inject.InjectClass;
+import com.pvphall.inject.TestClassLoader;
+import com.pvphall.inject.TestCompiler;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FieldsLoaderTest {
+
+    private static final String ENTITY = "fixtures.Entity";
+    private static final String ENTITY_INJECTION = "fixtures.EntityInject";
+    private static final String TAGGED = "fixtures.Tagged";
+
+    // The first constructor delegates to the second one, the injected fields must be initialized only once
+    private static final String ENTITY_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class Entity {\n"
+            + "    public static int created = 1;\n"
+            + "    public int id;\n"
+            + "    public long health;\n"
+            + "    public Entity() { this(7); }\n"
+            + "    public Entity(int id) { this.id = id; }\n"
+            + "    public Entity(String name) { this.id = name.length(); }\n"
+            + "}\n";
+
+    // plain is not injected, health already is a long in the target: their initializers are left out
+    private static final String ENTITY_INJECTION_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.annotations.*;\n"
+            + "import java.util.*;\n"
+            + "@Injectable(target = \"fixtures.Entity\")\n"
+            + "public abstract class EntityInject implements Tagged {\n"
+            + "    @InjectField public static int instances = 100;\n"
+            + "    public int plain = 3;\n"
+            + "    @InjectField public int counter = 10;\n"
+            + "    @InjectField public List<String> tags = new ArrayList<String>(Arrays.asList(\"a\", \"b\"));\n"
+            + "    @InjectField public int health = 5;\n"
+            + "    @InjectField public int serial = ++instances;\n"
+            + "    @InjectField public String size = counter > 5 ? \"big\" : \"small\";\n"
+            + "    @Accessor public abstract int getCounter();\n"
+            + "    @Accessor(\"counter\") public abstract long counterAsLong();\n"
+            + "}\n";
+
+    // The accessor of health does not match the long field of the target, it is rejected
+    private static final String TAGGED_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.annotations.Accessor;\n"
+            + "import java.util.List;\n"
+            + "public interface Tagged {\n"
+            + "    @Accessor List<String> getTags();\n"
+            + "    @Accessor(\"instances\") int instances();\n"
+            + "    @Accessor void setCounter(int counter);\n"
+            + "    @Accessor(\"health\") int health();\n"
+            + "}\n";
+
+    @Test
+    public void splitsInitializersByField() {
+        Map<String, byte[]> classes = this.compile();
+        ClassNode node = new ClassNode();
+        new ClassReader(classes.get(ENTITY_INJECTION.replace('.', '/'))).accept(node, ClassReader.SKIP_FRAMES);
+        ClassNode interfaceNode = new ClassNode();
+        new ClassReader(classes.get(TAGGED.replace('.', '/'))).accept(interfaceNode, ClassReader.SKIP_CODE);
+
+        InjectClass injectClass = new InjectClass(node, Collections.singletonList(interfaceNode));
+
+        assertEquals(Arrays.asList("counter", "tags", "health", "serial", "size"), new ArrayList<String>(injectClass.getInitializers().keySet()));
+        assertEquals(Collections.singletonList("instances"), new ArrayList<String>(injectClass.getStaticInitializers().keySet()));
+        assertEquals(6, injectClass.getAccessors().size());
+    }
+
+    @Test
+    public void copiesFields() throws ReflectiveOperationException {
+        this.checkEntity(false);
+    }
+
+    @Test
+    public void copiesFieldsWhileStreaming() throws ReflectiveOperationException {
+        System.setProperty("inject.streaming", "true");
+
+        try {
+            this.checkEntity(true);
+        } finally {
+            System.clearProperty("inject.streaming");
+        }
+    }
+
+    private void checkEntity(boolean streaming) throws ReflectiveOperationException {
+        TestClassLoader classLoader = new TestClassLoader(this.compile());
+        Class<?> woven = classLoader.weave(ENTITY, ENTITY_INJECTION);
+        Class<?> tagged = classLoader.loadClass(TAGGED);
+        String path = streaming ? "streaming" : "tree";
+
+        // The static initializer runs before the one of the target
+        assertEquals(path, 100, woven.getField("instances").get(null));
+        assertEquals(path, 1, woven.getField("created").get(null));
+
+        Object first = woven.getConstructor().newInstance();
+        Object second = woven.getConstructor(String.class).newInstance("named");
+
+        assertEquals(path, 7, woven.getField("id").get(first));
+        assertEquals(path, 5, woven.getField("id").get(second));
+        assertEquals(path, 10, woven.getField("counter").get(first));
+        assertEquals(path, Arrays.asList("a", "b"), woven.getField("tags").get(first));
+        assertEquals(path, "big", woven.getField("size").get(first));
+        assertEquals(path, 101, woven.getField("serial").get(first));
+        assertEquals(path, 102, woven.getField("serial").get(second));
+        assertEquals(path, 102, woven.getField("instances").get(null));
+
+        // The long field of the target is kept, without the initializer of the injected int
+        assertEquals(path, long.class, woven.getField("health").getType());
+        assertEquals(path, 0L, woven.getField("health").get(first));
+
+        for (Field field : woven.getDeclaredFields())
+            assertTrue(path + ": " + field.getName(), !field.getName().equals("plain"));
+
+        // Accessors of the injection class and of its interface
+        assertTrue(path, tagged.isAssignableFrom(woven));
+        assertEquals(path, 10, woven.getMethod("getCounter").invoke(first));
+        tagged.getMethod("setCounter", int.class).invoke(first, 42);
+        assertEquals(path, 42, woven.getMethod("getCounter").invoke(first));
+        assertEquals(path, Arrays.asList("a", "b"), tagged.getMethod("getTags").invoke(first));
+        assertEquals(path, 102, tagged.getMethod("instances").invoke(first));
+
+        for (Method method : woven.getDeclaredMethods())
+            assertTrue(path + ": " + method.getName(), !method.getName().equals("counterAsLong") && !method.getName().equals("health"));
+    }
+
+    private Map<String, byte[]> compile() {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put(ENTITY, ENTITY_SOURCE);
+        sources.put(ENTITY_INJECTION, ENTITY_INJECTION_SOURCE);
+        sources.put(TAGGED, TAGGED_SOURCE);
+
+        return new TestCompiler().compile(sources);
+    }
+}
@@ -0,0 +1,355 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.loaders;
+
+import com.pvphall.inject.TestClassLoader;
+import com.pvphall.inject.TestCompiler;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class MethodsLoaderTest {
+
+    private static final String STACK = "fixtures.Stack";
+    private static final String STACK_INJECTION = "fixtures.StackInject";
+    private static final String INDEX = "fixtures.Index";
+    private static final String INDEX_INJECTION = "fixtures.IndexInject";
+    private static final String CALLBACK = "fixtures.Callback";
+    private static final String CALLBACK_INJECTION = "fixtures.CallbackInject";
+    private static final String REDIRECT = "fixtures.Redirect";
+    private static final String REDIRECT_INJECTION = "fixtures.RedirectInject";
+    private static final String OVERLOAD_INJECTION = "fixtures.OverloadInject";
+    private static final String RETURNS = "fixtures.Returns";
+    private static final String RETURNS_INJECTION = "fixtures.ReturnsInject";
+
+    private static final String STACK_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class Stack {\n"
+            + "    public int calls;\n"
+            + "    public int consts() { int a = 7; return a + 300; }\n"
+            + "    public int nested(int x) { return x + foo(); }\n"
+            + "    public int arguments(int a) { return bar(a, foo()); }\n"
+            + "    public String created() { return new StringBuilder(String.valueOf(foo())).toString(); }\n"
+            + "    int foo() { return 5; }\n"
+            + "    int bar(int a, int b) { return a * b; }\n"
+            + "}\n";
+
+    // Each hook catches an exception, so that the stack under its location has to be kept in locals
+    private static final String STACK_INJECTION_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.InjectType;\n"
+            + "import com.pvphall.inject.annotations.*;\n"
+            + "@Injectable(target = \"fixtures.Stack\")\n"
+            + "public abstract class StackInject {\n"
+            + "    public int calls;\n"
+            + "    @Inject(type = InjectType.PRECISE, precise = @Precise(type = PreciseType.CONSTANT, name = \"300\", shift = PreciseShift.AFTER))\n"
+            + "    public int consts() { try { calls += Integer.parseInt(\"1\"); } catch (NumberFormatException e) { calls = -1; } return 0; }\n"
+            + "    @Inject(type = InjectType.PRECISE, precise = @Precise(type = PreciseType.METHOD, name = \"foo\"))\n"
+            + "    public int nested(int x) { try { calls += Integer.parseInt(\"1\"); } catch (NumberFormatException e) { calls = -1; } return 0; }\n"
+            + "    @Inject(type = InjectType.PRECISE, precise = @Precise(type = PreciseType.METHOD, name = \"foo\", shift = PreciseShift.AFTER))\n"
+            + "    public int arguments(int a) { try { calls += Integer.parseInt(\"1\"); } catch (NumberFormatException e) { calls = -1; } return 0; }\n"
+            + "    @Inject(type = InjectType.PRECISE, precise = @Precise(type = PreciseType.METHOD, name = \"foo\"))\n"
+            + "    public String created() { try { calls += Integer.parseInt(\"1\"); } catch (NumberFormatException e) { calls = -1; } return null; }\n"
+            + "}\n";
+
+    private static final String INDEX_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class Index {\n"
+            + "    public int calls;\n"
+            + "    public int compute(int x) { return helper(x); }\n"
+            + "    public int helper(int x) { return x + 1; }\n"
+            + "}\n";
+
+    // The hook inserted at the start calls helper too, the next injections must only find the original call
+    private static final String INDEX_INJECTION_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.InjectType;\n"
+            + "import com.pvphall.inject.annotations.*;\n"
+            + "@Injectable(target = \"fixtures.Index\")\n"
+            + "public abstract class IndexInject {\n"
+            + "    public int calls;\n"
+            + "    public abstract int helper(int x);\n"
+            + "    @Inject(type = InjectType.INSERT_START)\n"
+            + "    public int compute(int x) { calls += helper(100); return 0; }\n"
+            + "    @Inject(type = InjectType.PRECISE, method = \"compute(I)I\", precise = @Precise(type = PreciseType.METHOD, name = \"helper\"))\n"
+            + "    public int beforeHelper(int x) { calls += 1000; return 0; }\n"
+            + "    @Inject(type = InjectType.REDIRECT, method = \"compute\", precise = @Precise(type = PreciseType.METHOD, name = \"helper\"))\n"
+            + "    public int redirectHelper(Index self, int x) { return x * 2; }\n"
+            + "}\n";
+
+    private static final String CALLBACK_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class Callback {\n"
+            + "    public int calls;\n"
+            + "    public int abs(int x) { calls++; return x < 0 ? -x : x; }\n"
+            + "    public void log(String message) { calls++; }\n"
+            + "    public int voidHook(int x) { calls++; return x; }\n"
+            + "    public void valueHook(int x) { calls++; }\n"
+            + "}\n";
+
+    // The last two hooks do not return the type of their target, they are rejected and their target left as is
+    private static final String CALLBACK_INJECTION_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.InjectType;\n"
+            + "import com.pvphall.inject.annotations.*;\n"
+            + "import com.pvphall.inject.api.callbacks.CallbackInfo;\n"
+            + "@Injectable(target = \"fixtures.Callback\")\n"
+            + "public abstract class CallbackInject {\n"
+            + "    @Inject(type = InjectType.CALLBACK)\n"
+            + "    public int abs(int x, CallbackInfo info) { if (x == 0) info.cancel(); return -1; }\n"
+            + "    @Inject(type = InjectType.CALLBACK)\n"
+            + "    public void log(String message, CallbackInfo info) { if (message == null) info.cancel(); }\n"
+            + "    @Inject(type = InjectType.CALLBACK, method = \"voidHook(I)I\")\n"
+            + "    public void voidHook(int x, CallbackInfo info) { info.cancel(); }\n"
+            + "    @Inject(type = InjectType.CALLBACK, method = \"valueHook(I)V\")\n"
+            + "    public int valueHook(int x, CallbackInfo info) { info.cancel(); return 1; }\n"
+            + "}\n";
+
+    private static final String REDIRECT_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class Redirect {\n"
+            + "    public int value = 3;\n"
+            + "    public int calls;\n"
+            + "    public int twice(int x) { return scale(x, 2); }\n"
+            + "    public int read() { return value + 1; }\n"
+            + "    public void write(int v) { value = v; }\n"
+            + "    public int size(String s) { return s.length(); }\n"
+            + "    public int size(int x) { return x; }\n"
+            + "    int scale(int x, int f) { return x * f; }\n"
+            + "}\n";
+
+    private static final String REDIRECT_INJECTION_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.InjectType;\n"
+            + "import com.pvphall.inject.annotations.*;\n"
+            + "@Injectable(target = \"fixtures.Redirect\")\n"
+            + "public abstract class RedirectInject {\n"
+            + "    public int calls;\n"
+            + "    @Inject(type = InjectType.REDIRECT, method = \"twice(I)I\", precise = @Precise(type = PreciseType.METHOD, name = \"scale\"))\n"
+            + "    public int redirectScale(Redirect self, int x, int f) { return x * f * 10; }\n"
+            + "    @Inject(type = InjectType.REDIRECT, method = \"read()I\", precise = @Precise(type = PreciseType.FIELD_GET, name = \"value\"))\n"
+            + "    public int redirectRead(Redirect self) { calls++; return 40; }\n"
+            + "    @Inject(type = InjectType.REDIRECT, method = \"write(I)V\", precise = @Precise(type = PreciseType.FIELD_PUT, name = \"value\"))\n"
+            + "    public void redirectWrite(Redirect self, int v) { calls++; self.value = v * 100; }\n"
+            + "}\n";
+
+    // Named without its descriptor, the target is overloaded, the redirect is rejected and both overloads left as is
+    private static final String OVERLOAD_INJECTION_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.InjectType;\n"
+            + "import com.pvphall.inject.annotations.*;\n"
+            + "@Injectable(target = \"fixtures.Redirect\")\n"
+            + "public abstract class OverloadInject {\n"
+            + "    @Inject(type = InjectType.REDIRECT, method = \"size\", precise = @Precise(type = PreciseType.METHOD, name = \"length\"))\n"
+            + "    public int redirectLength(String s) { return 1000; }\n"
+            + "}\n";
+
+    private static final String RETURNS_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class Returns {\n"
+            + "    public int calls;\n"
+            + "    public void tick(boolean early) { if (early) return; calls += 10; }\n"
+            + "    public void tock(boolean early) { if (early) return; calls += 10; }\n"
+            + "}\n";
+
+    // INSERT_END only runs before the last return, PRECISE at every return runs before the early one too
+    private static final String RETURNS_INJECTION_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.InjectType;\n"
+            + "import com.pvphall.inject.annotations.*;\n"
+            + "@Injectable(target = \"fixtures.Returns\")\n"
+            + "public abstract class ReturnsInject {\n"
+            + "    public int calls;\n"
+            + "    @Inject(type = InjectType.INSERT_END)\n"
+            + "    public void tick(boolean early) { calls++; }\n"
+            + "    @Inject(type = InjectType.PRECISE, precise = @Precise(type = PreciseType.RETURN, ordinal = -1))\n"
+            + "    public void tock(boolean early) { calls++; }\n"
+            + "}\n";
+
+    @Test
+    public void keepsStackUnderLocation() throws ReflectiveOperationException {
+        this.checkStack(false);
+    }
+
+    @Test
+    public void keepsStackUnderLocationWhileStreaming() throws ReflectiveOperationException {
+        System.setProperty("inject.streaming", "true");
+
+        try {
+            this.checkStack(true);
+        } finally {
+            System.clearProperty("inject.streaming");
+        }
+    }
+
+    @Test
+    public void ignoresInsertedCode() throws ReflectiveOperationException {
+        this.checkIndex(false);
+    }
+
+    @Test
+    public void ignoresInsertedCodeWhileStreaming() throws ReflectiveOperationException {
+        System.setProperty("inject.streaming", "true");
+
+        try {
+            this.checkIndex(true);
+        } finally {
+            System.clearProperty("inject.streaming");
+        }
+    }
+
+    @Test
+    public void cancelsCallbacks() throws ReflectiveOperationException {
+        this.checkCallback(false);
+    }
+
+    @Test
+    public void cancelsCallbacksWhileStreaming() throws ReflectiveOperationException {
+        System.setProperty("inject.streaming", "true");
+
+        try {
+            this.checkCallback(true);
+        } finally {
+            System.clearProperty("inject.streaming");
+        }
+    }
+
+    @Test
+    public void redirectsCallsAndFields() throws ReflectiveOperationException {
+        this.checkRedirect(false);
+    }
+
+    @Test
+    public void redirectsCallsAndFieldsWhileStreaming() throws ReflectiveOperationException {
+        System.setProperty("inject.streaming", "true");
+
+        try {
+            this.checkRedirect(true);
+        } finally {
+            System.clearProperty("inject.streaming");
+        }
+    }
+
+    @Test
+    public void rejectsOverloadedTarget() throws ReflectiveOperationException {
+        System.setProperty("inject.streaming", "true");
+
+        try {
+            Class<?> woven = this.weave(REDIRECT, REDIRECT_SOURCE, OVERLOAD_INJECTION, OVERLOAD_INJECTION_SOURCE);
+            Object redirect = woven.getConstructor().newInstance();
+
+            assertEquals(3, woven.getMethod("size", String.class).invoke(redirect, "abc"));
+            assertEquals(4, woven.getMethod("size", int.class).invoke(redirect, 4));
+        } finally {
+            System.clearProperty("inject.streaming");
+        }
+    }
+
+    @Test
+    public void insertsBeforeReturns() throws ReflectiveOperationException {
+        Class<?> woven = this.weave(RETURNS, RETURNS_SOURCE, RETURNS_INJECTION, RETURNS_INJECTION_SOURCE);
+        Object returns = woven.getConstructor().newInstance();
+
+        woven.getMethod("tick", boolean.class).invoke(returns, true);
+        assertEquals(0, woven.getField("calls").get(returns));
+        woven.getMethod("tick", boolean.class).invoke(returns, false);
+        assertEquals(11, woven.getField("calls").get(returns));
+
+        woven.getMethod("tock", boolean.class).invoke(returns, true);
+        assertEquals(12, woven.getField("calls").get(returns));
+        woven.getMethod("tock", boolean.class).invoke(returns, false);
+        assertEquals(23, woven.getField("calls").get(returns));
+    }
+
+    private void checkStack(boolean streaming) throws ReflectiveOperationException {
+        Class<?> woven = this.weave(STACK, STACK_SOURCE, STACK_INJECTION, STACK_INJECTION_SOURCE);
+        Object stack = woven.getConstructor().newInstance();
+        String path = streaming ? "streaming" : "tree";
+
+        assertEquals(path, 307, woven.getMethod("consts").invoke(stack));
+        assertEquals(path, 6, woven.getMethod("nested", int.class).invoke(stack, 1));
+        assertEquals(path, 10, woven.getMethod("arguments", int.class).invoke(stack, 2));
+        assertEquals(path, 3, woven.getField("calls").get(stack));
+
+        // The StringBuilder is not initialized when foo is called, the hook is rejected and the method left as is
+        assertEquals(path, "5", woven.getMethod("created").invoke(stack));
+        assertEquals(path, 3, woven.getField("calls").get(stack));
+    }
+
+    private void checkIndex(boolean streaming) throws ReflectiveOperationException {
+        Class<?> woven = this.weave(INDEX, INDEX_SOURCE, INDEX_INJECTION, INDEX_INJECTION_SOURCE);
+        Object index = woven.getConstructor().newInstance();
+        String path = streaming ? "streaming" : "tree";
+
+        assertEquals(path, 10, woven.getMethod("compute", int.class).invoke(index, 5));
+        assertEquals(path, 1101, woven.getField("calls").get(index));
+    }
+
+    private void checkCallback(boolean streaming) throws ReflectiveOperationException {
+        Class<?> woven = this.weave(CALLBACK, CALLBACK_SOURCE, CALLBACK_INJECTION, CALLBACK_INJECTION_SOURCE);
+        Object callback = woven.getConstructor().newInstance();
+        String path = streaming ? "streaming" : "tree";
+
+        // Cancelled calls return the result of the hook right away, the others run the target
+        assertEquals(path, -1, woven.getMethod("abs", int.class).invoke(callback, 0));
+        assertEquals(path, 0, woven.getField("calls").get(callback));
+        assertEquals(path, 3, woven.getMethod("abs", int.class).invoke(callback, -3));
+        assertEquals(path, 1, woven.getField("calls").get(callback));
+
+        woven.getMethod("log", String.class).invoke(callback, (Object) null);
+        assertEquals(path, 1, woven.getField("calls").get(callback));
+        woven.getMethod("log", String.class).invoke(callback, "message");
+        assertEquals(path, 2, woven.getField("calls").get(callback));
+
+        assertEquals(path, 5, woven.getMethod("voidHook", int.class).invoke(callback, 5));
+        woven.getMethod("valueHook", int.class).invoke(callback, 5);
+        assertEquals(path, 4, woven.getField("calls").get(callback));
+    }
+
+    private void checkRedirect(boolean streaming) throws ReflectiveOperationException {
+        Class<?> woven = this.weave(REDIRECT, REDIRECT_SOURCE, REDIRECT_INJECTION, REDIRECT_INJECTION_SOURCE);
+        Object redirect = woven.getConstructor().newInstance();
+        String path = streaming ? "streaming" : "tree";
+
+        assertEquals(path, 60, woven.getMethod("twice", int.class).invoke(redirect, 3));
+        assertEquals(path, 41, woven.getMethod("read").invoke(redirect));
+        assertEquals(path, 3, woven.getField("value").get(redirect));
+
+        woven.getMethod("write", int.class).invoke(redirect, 7);
+        assertEquals(path, 700, woven.getField("value").get(redirect));
+        assertEquals(path, 2, woven.getField("calls").get(redirect));
+    }
+
+    private Class<?> weave(String target, String targetSource, String injection, String injectionSource) {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put(target, targetSource);
+        sources.put(injection, injectionSource);
+
+        return new TestClassLoader(new TestCompiler().compile(sources)).weave(target, injection);
+    }
+}
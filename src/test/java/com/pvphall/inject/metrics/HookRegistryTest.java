@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.metrics;
+
+import com.pvphall.inject.InjectMethod;
+import com.pvphall.inject.InjectType;
+import org.junit.Test;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class HookRegistryTest {
+
+    /**
+     * Counts of ended threads are kept once their counters are let go, and rates only cover the runs since the previous snapshot.
+     */
+    @Test
+    public void sumsCountsOfEveryThread() throws InterruptedException {
+        HookRegistry registry = new HookRegistry(false, true);
+        Hook first = registry.register(this.createMethod("first"));
+        Hook second = registry.register(this.createMethod("second"));
+
+        registry.count(first.getId());
+        registry.count(first.getId());
+        this.countOnThread(registry, first, 3);
+        this.countOnThread(registry, second, 5);
+
+        HookSnapshot snapshot = registry.snapshot(null);
+
+        assertEquals(5, snapshot.getCalls(first));
+        assertEquals(5, snapshot.getCalls(second));
+
+        // The next threads find the counters of the ended ones to retire
+        this.countOnThread(registry, first, 10);
+        registry.count(second.getId());
+
+        HookSnapshot next = registry.snapshot(snapshot);
+
+        assertEquals(15, next.getCalls(first));
+        assertEquals(6, next.getCalls(second));
+
+        for (HookSnapshot.Entry entry : next.getEntries())
+            assertEquals(entry.getHook() == first ? 10 : 1, entry.getDelta());
+
+        // The first entry is the hottest since the previous snapshot
+        assertEquals(first, next.getEntries().get(0).getHook());
+    }
+
+    private void countOnThread(HookRegistry registry, Hook hook, int runs) throws InterruptedException {
+        Thread thread = new Thread(() -> {
+            for (int i = 0; i < runs; i++)
+                registry.count(hook.getId());
+        });
+
+        thread.start();
+        thread.join();
+    }
+
+    private InjectMethod createMethod(String name) {
+        MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC, name, "()V", null, null);
+
+        return new InjectMethod("fixtures/Hooks", method, InjectType.INSERT_START, Collections.emptyList(), null, name);
+    }
+}
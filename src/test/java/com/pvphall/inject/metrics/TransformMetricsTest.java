@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.metrics;
+
+import com.pvphall.inject.InjectType;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.junit.Assert.assertEquals;
+
+public class TransformMetricsTest {
+
+    private static final String CLASS_NAME = "fixtures.Target";
+
+    /**
+     * A class defined by two loaders is measured twice, and a class transformed again keeps the costs of both transforms.
+     */
+    @Test
+    public void keysClassesByLoader() {
+        TransformMetrics metrics = new TransformMetrics(new File("inject-metrics.json"));
+        ClassLoader first = new URLClassLoader(new URL[0]);
+        ClassLoader second = new URLClassLoader(new URL[0]);
+
+        this.transform(metrics, first, 1);
+        this.transform(metrics, second, 10);
+        this.transform(metrics, first, 100);
+
+        assertEquals(2, metrics.getClassCount());
+
+        for (ClassMetrics classMetrics : metrics.getClasses().values())
+            assertEquals(classMetrics.getParseNanos() == 101 ? 2 : 1, classMetrics.getTransforms());
+
+        assertEquals(111, metrics.getClasses().values().stream().mapToLong(ClassMetrics::getParseNanos).sum());
+    }
+
+    /**
+     * A class transformed while another one is, as when frames are computed, does not take over the outer class.
+     */
+    @Test
+    public void restoresOuterClassAfterNestedTransform() {
+        TransformMetrics metrics = new TransformMetrics(new File("inject-metrics.json"));
+        ClassLoader loader = new URLClassLoader(new URL[0]);
+
+        ClassMetrics outer = metrics.begin("fixtures.Outer", loader);
+        metrics.recordInjection(InjectType.INSERT_START, 1);
+
+        ClassMetrics nested = metrics.begin("fixtures.Nested", loader);
+        metrics.recordInjection(InjectType.INSERT_START, 1);
+        metrics.end(nested);
+
+        metrics.recordInjection(InjectType.INSERT_END, 1);
+        metrics.end(outer);
+
+        assertEquals(2, outer.getInjections());
+        assertEquals(1, nested.getInjections());
+
+        // Once the outer class ends, injections outside a transform are not given to any class
+        metrics.recordInjection(InjectType.INSERT_END, 1);
+        assertEquals(2, outer.getInjections());
+        assertEquals(2, metrics.getClassCount());
+    }
+
+    private void transform(TransformMetrics metrics, ClassLoader loader, long parseNanos) {
+        ClassMetrics classMetrics = metrics.begin(CLASS_NAME, loader);
+        classMetrics.addParseNanos(parseNanos);
+        metrics.end(classMetrics);
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.processor;
+
+import com.pvphall.inject.TestCompiler;
+import com.pvphall.inject.config.Manifest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InjectProcessorTest {
+
+    private static final String PROCESSOR = InjectProcessor.class.getName();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("processor").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.directory.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Recompiling a single injection class keeps the entries of the others in the manifest.
+     */
+    @Test
+    public void keepsEntriesOnIncrementalCompilation() throws IOException {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("fixtures.Game", "package fixtures; public class Game { public void tick() {} public void render() {} }");
+        sources.put("fixtures.TickInject", injection("TickInject", "tick"));
+        sources.put("fixtures.RenderInject", injection("RenderInject", "render"));
+        sources.put("fixtures.Removed", injection("Removed", "tick"));
+
+        TestCompiler compiler = new TestCompiler();
+        compiler.compile(this.directory, sources, "-processor", PROCESSOR);
+        assertEquals(3, this.readManifest().getEntries().size());
+
+        // The class removed from the sources is deleted from the output, as build tools do before compiling again
+        new File(this.directory, "fixtures/Removed.class").delete();
+
+        Map<String, String> changed = new HashMap<String, String>();
+        changed.put("fixtures.TickInject", injection("TickInject", "render"));
+        compiler.compile(this.directory, changed, "-processor", PROCESSOR);
+
+        Manifest manifest = this.readManifest();
+        assertEquals(2, manifest.getEntries().size());
+        assertEquals("render", manifest.getEntry("fixtures.TickInject").getMethods().get(0).getName());
+        assertNotNull(manifest.getEntry("fixtures.RenderInject"));
+        assertNull(manifest.getEntry("fixtures.Removed"));
+    }
+
+    /**
+     * Recompiling one of two injection classes rewrites the manifest written by the previous compilation, with the
+     * entry of the other class as it was.
+     */
+    @Test
+    public void keepsOtherEntryWhenRecompilingOne() throws IOException {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("fixtures.Game", "package fixtures; public class Game { public void tick() {} public void render() {} }");
+        sources.put("fixtures.TickInject", injection("TickInject", "tick"));
+        sources.put("fixtures.RenderInject", injection("RenderInject", "render"));
+
+        TestCompiler compiler = new TestCompiler();
+        compiler.compile(this.directory, sources, "-processor", PROCESSOR);
+
+        Map<String, String> changed = new HashMap<String, String>();
+        changed.put("fixtures.RenderInject", "package fixtures;\n"
+                + "import com.pvphall.inject.InjectType;\n"
+                + "import com.pvphall.inject.annotations.*;\n"
+                + "@Injectable(target = \"fixtures.Game\")\n"
+                + "public abstract class RenderInject {\n"
+                + "    @Inject(type = InjectType.INSERT_START)\n"
+                + "    public void render() {}\n"
+                + "    @Inject(type = InjectType.INSERT_END, method = \"tick\")\n"
+                + "    public void afterTick() {}\n"
+                + "}\n");
+        compiler.compile(this.directory, changed, "-processor", PROCESSOR);
+
+        Manifest manifest = this.readManifest();
+        assertEquals(2, manifest.getEntries().size());
+        assertEquals(2, manifest.getEntry("fixtures.RenderInject").getMethods().size());
+        assertEquals("tick", manifest.getEntry("fixtures.TickInject").getMethods().get(0).getName());
+    }
+
+    /**
+     * Constructors are targets like methods, under the name they have in the class files.
+     */
+    @Test
+    public void checksConstructorTargets() throws IOException {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("fixtures.Game", "package fixtures; public class Game { public Game(int x) {} }");
+        sources.put("fixtures.InitInject", constructorInjection("InitInject", "INSERT_START", "<init>", "int x"));
+
+        new TestCompiler().compile(this.directory, sources, "-processor", PROCESSOR);
+        assertEquals("<init>", this.readManifest().getEntry("fixtures.InitInject").getMethods().get(0).getTargetMethod());
+
+        sources.put("fixtures.InitInject", constructorInjection("InitInject", "INSERT_START", "<init>(J)V", "long x"));
+        this.assertError(sources, "INSERT_START injection of a method not found in fixtures.Game: <init>(J)V");
+    }
+
+    /**
+     * A callback cancelled before the super constructor is called would leave the object uninitialized.
+     */
+    @Test
+    public void rejectsCallbackOnConstructor() {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("fixtures.Game", "package fixtures; public class Game { public Game(int x) {} }");
+        sources.put("fixtures.InitInject", constructorInjection("InitInject", "CALLBACK", "<init>(I)V", "int x, com.pvphall.inject.api.callbacks.CallbackInfo info"));
+
+        this.assertError(sources, "CALLBACK injection cannot target a constructor");
+    }
+
+    /**
+     * A callback returning another type than its target could not return its result in place of the target.
+     */
+    @Test
+    public void rejectsCallbackOfAnotherType() {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("fixtures.Game", "package fixtures; public class Game { public int score(int x) { return x; } }");
+        sources.put("fixtures.ScoreInject", "package fixtures;\n"
+                + "import com.pvphall.inject.InjectType;\n"
+                + "import com.pvphall.inject.annotations.*;\n"
+                + "import com.pvphall.inject.api.callbacks.CallbackInfo;\n"
+                + "@Injectable(target = \"fixtures.Game\")\n"
+                + "public abstract class ScoreInject {\n"
+                + "    @Inject(type = InjectType.CALLBACK, method = \"score(I)I\")\n"
+                + "    public void score(int x, CallbackInfo info) {}\n"
+                + "}\n");
+
+        this.assertError(sources, "CALLBACK injection must take the parameters of its target (I)I");
+    }
+
+    /**
+     * A target named without its descriptor would otherwise be the first of its overloads.
+     */
+    @Test
+    public void rejectsOverloadedTargetWithoutDescriptor() {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("fixtures.Game", "package fixtures; public class Game { public int size(int x) { return x; } public int size(String s) { return s.length(); } }");
+        sources.put("fixtures.SizeInject", "package fixtures;\n"
+                + "import com.pvphall.inject.InjectType;\n"
+                + "import com.pvphall.inject.annotations.*;\n"
+                + "@Injectable(target = \"fixtures.Game\")\n"
+                + "public abstract class SizeInject {\n"
+                + "    @Inject(type = InjectType.REDIRECT, method = \"size\", precise = @Precise(type = PreciseType.METHOD, name = \"length\"))\n"
+                + "    public int length(String s) { return 0; }\n"
+                + "}\n");
+
+        this.assertError(sources, "REDIRECT injection of an overloaded method in fixtures.Game");
+    }
+
+    private void assertError(Map<String, String> sources, String error) {
+        try {
+            new TestCompiler().compile(this.directory, sources, "-processor", PROCESSOR);
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(error));
+            return;
+        }
+
+        fail("Compiled without " + error);
+    }
+
+    private Manifest readManifest() throws IOException {
+        return Manifest.read(Files.readAllBytes(new File(this.directory, Manifest.RESOURCE).toPath()));
+    }
+
+    private static String injection(String name, String method) {
+        return "package fixtures;\n"
+                + "import com.pvphall.inject.InjectType;\n"
+                + "import com.pvphall.inject.annotations.*;\n"
+                + "@Injectable(target = \"fixtures.Game\")\n"
+                + "public abstract class " + name + " {\n"
+                + "    @Inject(type = InjectType.INSERT_START)\n"
+                + "    public void " + method + "() {}\n"
+                + "}\n";
+    }
+
+    private static String constructorInjection(String name, String type, String target, String parameters) {
+        return "package fixtures;\n"
+                + "import com.pvphall.inject.InjectType;\n"
+                + "import com.pvphall.inject.annotations.*;\n"
+                + "@Injectable(target = \"fixtures.Game\")\n"
+                + "public abstract class " + name + " {\n"
+                + "    @Inject(type = InjectType." + type + ", method = \"" + target + "\")\n"
+                + "    public void init(" + parameters + ") {}\n"
+                + "}\n";
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.reload;
+
+import com.pvphall.inject.InjectClass;
+import com.pvphall.inject.Injects;
+import com.pvphall.inject.TestClassLoader;
+import com.pvphall.inject.TestCompiler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+
+public class HotReloadTest {
+
+    private static final String COUNTER = "fixtures.Counter";
+    private static final String COUNTER_INJECTION = "fixtures.CounterInject";
+
+    private static final String COUNTER_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class Counter {\n"
+            + "    public int value;\n"
+            + "    public int tick() { return value += 1; }\n"
+            + "}\n";
+
+    private static final String COUNTER_INJECTION_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.InjectType;\n"
+            + "import com.pvphall.inject.annotations.*;\n"
+            + "@Injectable(target = \"fixtures.Counter\")\n"
+            + "public abstract class CounterInject {\n"
+            + "    public int value;\n"
+            + "    @Inject(type = InjectType.INSERT_START)\n"
+            + "    public int tick() { value += STEP; return 0; }\n"
+            + "}\n";
+
+    private Path directory;
+    private final List<ClassFileTransformer> recorders = new ArrayList<ClassFileTransformer>();
+    private final List<ClassFileTransformer> transformers = new ArrayList<ClassFileTransformer>();
+    private final List<Class<?>> loadedClasses = new ArrayList<Class<?>>();
+    private final Map<Class<?>, byte[]> definedBytes = new HashMap<Class<?>, byte[]>();
+    private final Map<Class<?>, byte[]> retransformed = new HashMap<Class<?>, byte[]>();
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("reload");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(this.directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * The target is woven again from the bytes it was defined with, not from the class file its loader reads.
+     */
+    @Test
+    public void reweavesDefinedBytes() throws Exception {
+        Path injection = this.writeInjection(10);
+        TestClassLoader.loadConfig(COUNTER_INJECTION);
+        InjectClass shared = Injects.getInstance().getInjectClass(COUNTER_INJECTION);
+
+        HotReload reload = new HotReload(this.createInstrumentation(), this.directory, true);
+        reload.install();
+
+        byte[] defined = this.compile(COUNTER_SOURCE.replace("value += 1", "value += 100"), 10).get(COUNTER.replace('.', '/'));
+        Class<?> counter = this.load(COUNTER_SOURCE, defined);
+
+        this.writeInjection(20);
+        reload.reload(Collections.singleton(injection));
+
+        assertEquals(120, this.tick(counter));
+        assertSame(shared, Injects.getInstance().getInjectClass(COUNTER_INJECTION));
+    }
+
+    /**
+     * An injection class listed after startup is detected when the configuration is written again.
+     */
+    @Test
+    public void detectsAddedInjections() throws Exception {
+        TestClassLoader.loadConfig("fixtures.Missing");
+
+        HotReload reload = new HotReload(this.createInstrumentation(), this.directory, true);
+        reload.install();
+
+        Class<?> counter = this.load(COUNTER_SOURCE, null);
+
+        this.writeInjection(20);
+        Path config = this.directory.resolve("injects.json");
+        Files.write(config, ("{\"injects\": [\"" + COUNTER_INJECTION + "\"]}").getBytes(StandardCharsets.UTF_8));
+        reload.reload(Collections.singleton(config));
+
+        assertEquals(21, this.tick(counter));
+    }
+
+    private int tick(Class<?> counter) throws ReflectiveOperationException {
+        byte[] bytes = this.retransformed.get(counter);
+        assertNotNull(bytes);
+
+        Class<?> woven = new TestClassLoader(this.compile(COUNTER_SOURCE, 0)).define(COUNTER, bytes);
+
+        return (Integer) woven.getMethod("tick").invoke(woven.getConstructor().newInstance());
+    }
+
+    /**
+     * Defines the target as a loader would, through the transformers recording it.
+     *
+     * @param defined the bytes it is defined with, or null for the ones its loader reads
+     */
+    private Class<?> load(String source, byte[] defined) throws Exception {
+        TestClassLoader classLoader = new TestClassLoader(this.compile(source, 0));
+        byte[] bytes = defined != null ? defined : classLoader.getBytes(COUNTER);
+
+        for (ClassFileTransformer recorder : this.recorders)
+            recorder.transform(classLoader, COUNTER.replace('.', '/'), null, null, bytes);
+
+        Class<?> loadedClass = classLoader.define(COUNTER, bytes);
+        this.loadedClasses.add(loadedClass);
+        this.definedBytes.put(loadedClass, bytes);
+
+        return loadedClass;
+    }
+
+    private Path writeInjection(int step) throws IOException {
+        Path path = this.directory.resolve("fixtures").resolve("CounterInject.class");
+        Files.createDirectories(path.getParent());
+        Files.write(path, this.compile(COUNTER_SOURCE, step).get(COUNTER_INJECTION.replace('.', '/')));
+
+        return path;
+    }
+
+    private Map<String, byte[]> compile(String counterSource, int step) {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put(COUNTER, counterSource);
+        sources.put(COUNTER_INJECTION, COUNTER_INJECTION_SOURCE.replace("STEP", String.valueOf(step)));
+
+        return new TestCompiler().compile(sources);
+    }
+
+    /**
+     * Retransforms the classes as the JVM does: from the bytes they were defined with, through the transformers able to.
+     */
+    private Instrumentation createInstrumentation() {
+        return (Instrumentation) Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class<?>[] { Instrumentation.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "addTransformer":
+                    (args.length > 1 && (Boolean) args[1] ? this.transformers : this.recorders).add((ClassFileTransformer) args[0]);
+                    return null;
+                case "getAllLoadedClasses":
+                    return this.loadedClasses.toArray(new Class<?>[0]);
+                case "retransformClasses":
+                    for (Class<?> loadedClass : (Class<?>[]) args[0]) {
+                        byte[] bytes = this.definedBytes.get(loadedClass);
+
+                        for (ClassFileTransformer transformer : this.transformers) {
+                            byte[] transformed = transformer.transform(loadedClass.getClassLoader(), loadedClass.getName().replace('.', '/'), loadedClass, null, bytes);
+                            bytes = transformed != null ? transformed : bytes;
+                        }
+
+                        this.retransformed.put(loadedClass, bytes);
+                    }
+
+                    return null;
+                default:
+                    return method.getReturnType() == boolean.class ? Boolean.TRUE : null;
+            }
+        });
+    }
+}
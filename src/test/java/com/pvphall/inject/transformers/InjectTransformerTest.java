@@ -0,0 +1,77 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.transformers;
+
+import com.pvphall.inject.TestClassLoader;
+import com.pvphall.inject.TestCompiler;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class InjectTransformerTest {
+
+    private static final String TARGET = "fixtures.Picker";
+    private static final String INJECTION = "fixtures.PickerInject";
+
+    /**
+     * As with an agent, the injection class and the hierarchy of the target are only visible from the loader defining it.
+     */
+    @Test
+    public void usesLoaderOfTransformedClass() throws ReflectiveOperationException {
+        Map<String, String> sources = new HashMap<String, String>();
+        sources.put("fixtures.Base", "package fixtures; public class Base {}");
+        sources.put("fixtures.Left", "package fixtures; public class Left extends Base {}");
+        sources.put("fixtures.Right", "package fixtures; public class Right extends Base {}");
+        sources.put(TARGET, ""
+                + "package fixtures;\n"
+                + "public class Picker {\n"
+                + "    public int calls;\n"
+                + "    public Base pick(boolean left) { return left ? new Left() : new Right(); }\n"
+                + "}\n");
+        sources.put(INJECTION, ""
+                + "package fixtures;\n"
+                + "import com.pvphall.inject.InjectType;\n"
+                + "import com.pvphall.inject.annotations.*;\n"
+                + "@Injectable(target = \"fixtures.Picker\")\n"
+                + "public abstract class PickerInject {\n"
+                + "    public int calls;\n"
+                + "    @Inject(type = InjectType.INSERT_START)\n"
+                + "    public Base pick(boolean left) { calls++; return null; }\n"
+                + "}\n");
+
+        TestClassLoader loader = new TestClassLoader(new TestCompiler().compile(sources));
+        TestClassLoader.loadConfig(INJECTION);
+
+        byte[] woven = new InjectTransformer().transform(TARGET, TARGET, loader.getBytes(TARGET), loader);
+        Class<?> picker = loader.define(TARGET, woven);
+        Object instance = picker.getConstructor().newInstance();
+
+        assertEquals("fixtures.Right", picker.getMethod("pick", boolean.class).invoke(instance, false).getClass().getName());
+        assertEquals(1, picker.getField("calls").get(instance));
+    }
+}
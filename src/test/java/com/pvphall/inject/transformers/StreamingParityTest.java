@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.transformers;
+
+import com.pvphall.inject.InjectType;
+import com.pvphall.inject.TestClassLoader;
+import com.pvphall.inject.TestCompiler;
+import com.pvphall.inject.api.transformers.TransformContext;
+import com.pvphall.inject.config.WeaveOptions;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.util.TraceClassVisitor;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingParityTest {
+
+    private static final String TARGET_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class %s {\n"
+            + "    public int calls;\n"
+            + "    public int replaced(int x) { return x; }\n"
+            + "    public int started(int x) { return x + 1; }\n"
+            + "    public int ended(int x) { return x + 2; }\n"
+            + "    public int precise(int x) { return helper(x) + 3; }\n"
+            + "    public int callback(int x) { return x * 4; }\n"
+            + "    public int redirected(int x) { return helper(x) * 5; }\n"
+            + "    int helper(int x) { return x - 1; }\n"
+            + "}\n";
+
+    private static final String INJECTION_SOURCE = ""
+            + "package fixtures;\n"
+            + "import com.pvphall.inject.InjectType;\n"
+            + "import com.pvphall.inject.annotations.*;\n"
+            + "import com.pvphall.inject.api.callbacks.CallbackInfo;\n"
+            + "@Injectable(target = \"fixtures.%s\")\n"
+            + "public abstract class %sInject {\n"
+            + "    public int calls;\n"
+            + "    %s\n"
+            + "}\n";
+
+    private static final Map<InjectType, String> INJECTIONS = new EnumMap<InjectType, String>(InjectType.class);
+
+    static {
+        INJECTIONS.put(InjectType.REPLACE, "@Inject(type = InjectType.REPLACE) public int replaced(int x) { return -x; }");
+        INJECTIONS.put(InjectType.CREATE, "@Inject(type = InjectType.CREATE) public int created(int x) { return x * 10; }");
+        INJECTIONS.put(InjectType.INSERT_START, "@Inject(type = InjectType.INSERT_START) public int started(int x) { calls++; return 0; }");
+        INJECTIONS.put(InjectType.INSERT_END, "@Inject(type = InjectType.INSERT_END) public int ended(int x) { calls += 2; return 0; }");
+        INJECTIONS.put(InjectType.PRECISE, "@Inject(type = InjectType.PRECISE, precise = @Precise(type = PreciseType.METHOD, name = \"helper\"))"
+                + " public int precise(int x) { calls += 3; return 0; }");
+        INJECTIONS.put(InjectType.CALLBACK, "@Inject(type = InjectType.CALLBACK) public int callback(int x, CallbackInfo info) { if (x < 0) info.cancel(); return 0; }");
+        INJECTIONS.put(InjectType.REDIRECT, "@Inject(type = InjectType.REDIRECT, method = \"redirected(I)I\", precise = @Precise(type = PreciseType.METHOD, name = \"helper\"))"
+                + " public int redirectHelper(fixtures.%s self, int x) { return x; }");
+    }
+
+    /**
+     * Weaving in a single pass gives the same class as weaving through a tree, whatever the inject type.
+     */
+    @Test
+    public void streamsLikeTree() {
+        assertEquals(InjectType.values().length, INJECTIONS.size());
+
+        for (Map.Entry<InjectType, String> injection : INJECTIONS.entrySet()) {
+            InjectType type = injection.getKey();
+            String name = "Parity" + type.name().replace("_", "");
+            String target = "fixtures." + name;
+            String source = String.format(injection.getValue(), name);
+
+            Map<String, String> sources = new HashMap<String, String>();
+            sources.put(target, String.format(TARGET_SOURCE, name));
+            sources.put(target + "Inject", String.format(INJECTION_SOURCE, name, name, source));
+
+            TestClassLoader loader = new TestClassLoader(new TestCompiler().compile(sources));
+            TestClassLoader.loadConfig(target + "Inject");
+
+            String tree = this.weave(loader, target, false, type);
+            String streamed = this.weave(loader, target, true, type);
+
+            assertEquals(type.name(), tree, streamed);
+        }
+    }
+
+    private String weave(TestClassLoader loader, String target, boolean streaming, InjectType type) {
+        boolean[] streamed = new boolean[1];
+        InjectTransformer transformer = new InjectTransformer(loader, WeaveOptions.fromProperties().setStreaming(streaming)) {
+
+            @Override
+            protected ClassVisitor visitor(ClassVisitor next, TransformContext context) {
+                ClassVisitor visitor = super.visitor(next, context);
+                streamed[0] = visitor != null;
+
+                return visitor;
+            }
+        };
+
+        byte[] woven = transformer.transform(target, target, loader.getBytes(target), loader);
+        assertTrue(type.name(), woven != loader.getBytes(target));
+        assertEquals(type.name(), streaming, streamed[0]);
+
+        StringWriter text = new StringWriter();
+        new ClassReader(woven).accept(new TraceClassVisitor(new PrintWriter(text)), 0);
+
+        return text.toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PvPHall
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pvphall.inject.verify;
+
+import com.pvphall.inject.TestClassLoader;
+import com.pvphall.inject.TestCompiler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ClassVerifierTest {
+
+    private static final String TARGET = "fixtures.Checked";
+
+    private static final String TARGET_SOURCE = ""
+            + "package fixtures;\n"
+            + "public class Checked {\n"
+            + "    public int value() { return 1; }\n"
+            + "}\n";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("verify").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : this.directory.listFiles())
+            child.delete();
+
+        this.directory.delete();
+    }
+
+    /**
+     * A method returning an int as an object is reported, the original bytes are defined, and the diff shows the change.
+     */
+    @Test
+    public void reportsInvalidWeave() throws IOException {
+        TestClassLoader loader = new TestClassLoader(new TestCompiler().compile(Collections.singletonMap(TARGET, TARGET_SOURCE)));
+        byte[] original = loader.getBytes(TARGET);
+        byte[] broken = this.replaceReturn(original, Opcodes.ARETURN);
+        boolean[] failed = new boolean[1];
+
+        assertSame(original, new ClassVerifier(false, this.directory).verify(TARGET, original, broken, loader, () -> failed[0] = true));
+        assertTrue(failed[0]);
+
+        String diff = new String(Files.readAllBytes(new File(this.directory, TARGET + ".diff").toPath()), StandardCharsets.UTF_8);
+
+        assertTrue(diff, diff.startsWith("! value()I: "));
+        assertTrue(diff, diff.contains("--- value()I\n+++ value()I\n"));
+        assertTrue(diff, diff.contains("\n-    IRETURN\n"));
+        assertTrue(diff, diff.contains("\n+    ARETURN\n"));
+        assertFalse(diff, diff.contains("<init>"));
+    }
+
+    @Test
+    public void acceptsValidWeave() {
+        TestClassLoader loader = new TestClassLoader(new TestCompiler().compile(Collections.singletonMap(TARGET, TARGET_SOURCE)));
+        byte[] original = loader.getBytes(TARGET);
+        byte[] woven = this.replaceReturn(original, Opcodes.IRETURN);
+        boolean[] failed = new boolean[1];
+
+        assertSame(woven, new ClassVerifier(false, null).verify(TARGET, original, woven, loader, () -> failed[0] = true));
+        assertFalse(failed[0]);
+    }
+
+    /**
+     * @return the class with the return of value() replaced, without frames so that the broken one can be written
+     */
+    private byte[] replaceReturn(byte[] bytes, int opcode) {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, ClassReader.SKIP_FRAMES);
+
+        for (MethodNode method : node.methods)
+            if (method.name.equals("value"))
+                for (AbstractInsnNode insn : method.instructions)
+                    if (insn.getOpcode() == Opcodes.IRETURN)
+                        method.instructions.set(insn, new InsnNode(opcode));
+
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        node.accept(writer);
+
+        return writer.toByteArray();
+    }
+}